@@ -0,0 +1,511 @@
+package uk.ac.bris.cs.gamekit.graph;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable graph with integer node values stored in compressed sparse row
+ * form. Every node is given a dense index in insertion order and edges are
+ * kept as primitive offsets, targets and enum ordinals so that neighbours can
+ * be iterated without any allocation:
+ *
+ * <pre>
+ * int index = graph.indexOf(location);
+ * for (int e = graph.edgeStart(index); e &lt; graph.edgeEnd(index); e++) {
+ * 	int destination = graph.valueOf(graph.edgeTarget(e));
+ * 	D data = graph.edgeData(e);
+ * }
+ * </pre>
+ *
+ * The {@link Graph} methods are still supported, the {@link Node} and
+ * {@link Edge} objects they return are created once on first use. Edges are
+ * reported in the same order as an {@link UndirectedGraph} built from the same
+ * sequence of {@link Builder#addEdge(int, int, Enum)} calls.
+ *
+ * @param <D> the type for {@link Edge} data
+ */
+public final class CompactGraph<D extends Enum<D>> extends AbstractGraph<Integer, D>
+		implements
+		Graph<Integer, D>,
+		Serializable {
+
+	private static final long serialVersionUID = 4021658373296128823L;
+	private static final int NOT_FOUND = -1;
+
+	private final Class<D> type;
+	private final D[] constants;
+	private final int[] values;
+	private final int base;
+	private final int[] denseIndices;
+	private final int[] sortedValues;
+	private final int[] sortedIndices;
+	private final int[] offsets;
+	private final int[] sources;
+	private final int[] targets;
+	private final byte[] codes;
+	private final int[] insertionOrder;
+
+	private transient volatile Views views;
+	private transient volatile ConcurrentMap<Set<D>, DistanceTable<D>> distanceTables;
+
+	private CompactGraph(Class<D> type, int[] values, int[] offsets, int[] targets, byte[] codes,
+			int[] insertionOrder) {
+		this.type = type;
+		this.constants = type.getEnumConstants();
+		this.values = values;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.codes = codes;
+		this.insertionOrder = insertionOrder;
+		int nodeCount = values.length;
+
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (int value : values) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		long span = nodeCount == 0 ? 0 : (long) max - min + 1;
+		if (span <= 8L * nodeCount + 64) {
+			base = min;
+			denseIndices = new int[(int) span];
+			Arrays.fill(denseIndices, NOT_FOUND);
+			for (int i = 0; i < nodeCount; i++) {
+				if (denseIndices[values[i] - min] != NOT_FOUND) throw duplicate(values[i]);
+				denseIndices[values[i] - min] = i;
+			}
+			sortedValues = null;
+			sortedIndices = null;
+		} else {
+			base = 0;
+			denseIndices = null;
+			long[] pairs = new long[nodeCount];
+			for (int i = 0; i < nodeCount; i++)
+				pairs[i] = ((long) values[i] << 32) | i;
+			Arrays.sort(pairs);
+			sortedValues = new int[nodeCount];
+			sortedIndices = new int[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				sortedValues[i] = (int) (pairs[i] >> 32);
+				sortedIndices[i] = (int) pairs[i];
+				if (i > 0 && sortedValues[i] == sortedValues[i - 1]) throw duplicate(sortedValues[i]);
+			}
+		}
+
+		sources = new int[targets.length];
+		for (int i = 0; i < nodeCount; i++)
+			Arrays.fill(sources, offsets[i], offsets[i + 1], i);
+	}
+
+	private static IllegalArgumentException duplicate(int value) {
+		return new IllegalArgumentException(new Node<>(value) + " is already in the graph");
+	}
+
+	private static <D extends Enum<D>> CompactGraph<D> fromArcs(Class<D> type, int[] values,
+			int nodeCount, int[] arcSources, int[] arcTargets, byte[] arcCodes, int arcCount) {
+		// stable counting sort of the arcs by source keeps insertion order
+		// within each node's slice
+		int[] offsets = new int[nodeCount + 1];
+		for (int i = 0; i < arcCount; i++) offsets[arcSources[i] + 1]++;
+		for (int i = 0; i < nodeCount; i++) offsets[i + 1] += offsets[i];
+		int[] cursor = Arrays.copyOf(offsets, nodeCount);
+		int[] targets = new int[arcCount];
+		byte[] codes = new byte[arcCount];
+		int[] insertionOrder = new int[arcCount];
+		for (int i = 0; i < arcCount; i++) {
+			int slot = cursor[arcSources[i]]++;
+			targets[slot] = arcTargets[i];
+			codes[slot] = arcCodes[i];
+			insertionOrder[i] = slot;
+		}
+		return new CompactGraph<>(type, Arrays.copyOf(values, nodeCount), offsets, targets, codes,
+				insertionOrder);
+	}
+
+	/**
+	 * Creates a graph from its arrays as written by {@link GraphFile}, the
+	 * arrays are checked and then owned by the graph
+	 *
+	 * @throws IllegalArgumentException if the arrays do not form a graph
+	 */
+	static <D extends Enum<D>> CompactGraph<D> fromArrays(Class<D> type, int[] values,
+			int[] offsets, int[] targets, byte[] codes, int[] insertionOrder) {
+		int nodeCount = values.length, arcCount = targets.length;
+		if (offsets.length != nodeCount + 1 || offsets[0] != 0 || offsets[nodeCount] != arcCount
+				|| codes.length != arcCount || insertionOrder.length != arcCount)
+			throw new IllegalArgumentException("Inconsistent graph arrays");
+		for (int i = 0; i < nodeCount; i++)
+			if (offsets[i] > offsets[i + 1]) throw new IllegalArgumentException("Unsorted offsets");
+		int constants = type.getEnumConstants().length;
+		boolean[] seen = new boolean[arcCount];
+		for (int e = 0; e < arcCount; e++) {
+			if (targets[e] < 0 || targets[e] >= nodeCount)
+				throw new IllegalArgumentException("Edge " + e + " has no target");
+			if (codes[e] < 0 || codes[e] >= constants)
+				throw new IllegalArgumentException("Edge " + e + " has unknown data");
+			int slot = insertionOrder[e];
+			if (slot < 0 || slot >= arcCount || seen[slot])
+				throw new IllegalArgumentException("Insertion order is not a permutation");
+			seen[slot] = true;
+		}
+		return new CompactGraph<>(type, values, offsets, targets, codes, insertionOrder);
+	}
+
+	/**
+	 * Creates a compact copy of the given graph. If the graph (or the graph
+	 * wrapped by an {@link ImmutableGraph}) is already a compact graph of the
+	 * same data type, it is returned as is.
+	 *
+	 * @param graph the graph to copy; not null
+	 * @param type the enum class of the edge data; not null
+	 * @return the compact graph; never null
+	 */
+	@SuppressWarnings("unchecked")
+	public static <D extends Enum<D>> CompactGraph<D> copyOf(Graph<Integer, D> graph,
+			Class<D> type) {
+		Objects.requireNonNull(graph);
+		Objects.requireNonNull(type);
+		Graph<Integer, D> actual = graph;
+		while (actual instanceof ImmutableGraph)
+			actual = ((ImmutableGraph<Integer, D>) actual).unwrap();
+		if (actual instanceof CompactGraph && ((CompactGraph<?>) actual).type == type)
+			return (CompactGraph<D>) actual;
+		Builder<D> builder = new Builder<>(type);
+		for (Node<Integer> node : graph.getNodes())
+			builder.addNode(node.value());
+		for (Edge<Integer, D> edge : graph.getEdges())
+			builder.addArc(edge.source().value(), edge.destination().value(), edge.data());
+		return builder.build();
+	}
+
+	/**
+	 * @return the enum class of the edge data
+	 */
+	public Class<D> dataType() {
+		return type;
+	}
+
+	/**
+	 * Finds the dense index of the node with the given value
+	 *
+	 * @param value the node value
+	 * @return the index in {@code [0, size())} or -1 if no such node exists
+	 */
+	public int indexOf(int value) {
+		if (denseIndices != null) {
+			long offset = (long) value - base;
+			return offset >= 0 && offset < denseIndices.length ?
+					denseIndices[(int) offset] : NOT_FOUND;
+		}
+		int found = Arrays.binarySearch(sortedValues, value);
+		return found < 0 ? NOT_FOUND : sortedIndices[found];
+	}
+
+	/**
+	 * @param index the node index
+	 * @return the value of the node at the given index
+	 */
+	public int valueOf(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @param index the node index
+	 * @return the first edge index of the given node
+	 */
+	public int edgeStart(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * @param index the node index
+	 * @return one past the last edge index of the given node
+	 */
+	public int edgeEnd(int index) {
+		return offsets[index + 1];
+	}
+
+	/**
+	 * @param index the node index
+	 * @return the number of edges going out of the given node
+	 */
+	public int degree(int index) {
+		return offsets[index + 1] - offsets[index];
+	}
+
+	/**
+	 * @param edge the edge index
+	 * @return the index of the source node of the edge
+	 */
+	public int edgeSource(int edge) {
+		return sources[edge];
+	}
+
+	/**
+	 * @param edge the edge index
+	 * @return the index of the destination node of the edge
+	 */
+	public int edgeTarget(int edge) {
+		return targets[edge];
+	}
+
+	/**
+	 * @param edge the edge index
+	 * @return the ordinal of the data of the edge
+	 */
+	public int edgeCode(int edge) {
+		return codes[edge];
+	}
+
+	/**
+	 * @param edge the edge index
+	 * @return the data of the edge; never null
+	 */
+	public D edgeData(int edge) {
+		return constants[codes[edge]];
+	}
+
+	/**
+	 * @return the total number of (directed) edges, an undirected edge counts
+	 *         as two
+	 */
+	public int edgeCount() {
+		return targets.length;
+	}
+
+	/**
+	 * @param arc the position of the arc in the order it was added
+	 * @return the edge index of the arc
+	 */
+	int insertedEdge(int arc) {
+		return insertionOrder[arc];
+	}
+
+	@Override
+	public void addNode(Node<Integer> node) {
+		throw new UnsupportedOperationException(
+				"Adding node is not supported in a CompactGraph");
+	}
+
+	@Override
+	public void addEdge(Edge<Integer, D> edge) {
+		throw new UnsupportedOperationException(
+				"Adding edge is not supported in a CompactGraph");
+	}
+
+	@Override
+	public Node<Integer> getNode(Integer value) {
+		if (value == null) return null;
+		int index = indexOf(value);
+		return index == NOT_FOUND ? null : views().nodes.get(index);
+	}
+
+	@Override
+	public boolean containsNode(Integer value) {
+		return value != null && indexOf(value) != NOT_FOUND;
+	}
+
+	@Override
+	public List<Node<Integer>> getNodes() {
+		return views().nodes;
+	}
+
+	@Override
+	public Collection<Edge<Integer, D>> getEdges() {
+		return views().edges;
+	}
+
+	@Override
+	public Collection<Edge<Integer, D>> getEdgesFrom(Node<Integer> source) {
+		int index = source == null ? NOT_FOUND : indexOf(source.value());
+		if (index == NOT_FOUND) return Collections.emptyList();
+		return views().edgesFrom.get(index);
+	}
+
+	@Override
+	public Collection<Edge<Integer, D>> getEdgesTo(Node<Integer> destination) {
+		int index = destination == null ? NOT_FOUND : indexOf(destination.value());
+		if (index == NOT_FOUND) return Collections.emptyList();
+		return views().edgesTo.get(index);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return values.length == 0;
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	private Views views() {
+		Views current = views;
+		if (current == null) {
+			synchronized (this) {
+				current = views;
+				if (current == null) views = current = new Views();
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return tables shared through {@link DistanceTable#cached(CompactGraph, Set)}
+	 */
+	ConcurrentMap<Set<D>, DistanceTable<D>> distanceTables() {
+		ConcurrentMap<Set<D>, DistanceTable<D>> current = distanceTables;
+		if (current == null) {
+			synchronized (this) {
+				current = distanceTables;
+				if (current == null) distanceTables = current = new ConcurrentHashMap<>();
+			}
+		}
+		return current;
+	}
+
+	@Override
+	public String toString() {
+		return "CompactGraph{" + "nodes=" + values.length + ", edges=" + targets.length + '}';
+	}
+
+	/**
+	 * Object views for the {@link Graph} methods, created once on demand
+	 */
+	private final class Views {
+
+		final List<Node<Integer>> nodes;
+		final List<Edge<Integer, D>> edges;
+		final List<List<Edge<Integer, D>>> edgesFrom;
+		final List<List<Edge<Integer, D>>> edgesTo;
+
+		Views() {
+			List<Node<Integer>> nodes = new ArrayList<>(values.length);
+			for (int value : values) nodes.add(new Node<>(value));
+
+			List<Edge<Integer, D>> slots = new ArrayList<>(targets.length);
+			for (int e = 0; e < targets.length; e++)
+				slots.add(new Edge<>(nodes.get(sources[e]), nodes.get(targets[e]), edgeData(e)));
+
+			List<Edge<Integer, D>> edges = new ArrayList<>(targets.length);
+			for (int slot : insertionOrder) edges.add(slots.get(slot));
+
+			List<List<Edge<Integer, D>>> edgesFrom = new ArrayList<>(values.length);
+			List<List<Edge<Integer, D>>> edgesTo = new ArrayList<>(values.length);
+			for (int i = 0; i < values.length; i++) {
+				edgesFrom.add(List.copyOf(slots.subList(offsets[i], offsets[i + 1])));
+				edgesTo.add(new ArrayList<>());
+			}
+			for (Edge<Integer, D> edge : edges)
+				edgesTo.get(indexOf(edge.destination().value())).add(edge);
+			edgesTo.replaceAll(List::copyOf);
+
+			this.nodes = List.copyOf(nodes);
+			this.edges = List.copyOf(edges);
+			this.edgesFrom = List.copyOf(edgesFrom);
+			this.edgesTo = List.copyOf(edgesTo);
+		}
+	}
+
+	/**
+	 * A builder for {@link CompactGraph}
+	 *
+	 * @param <D> the type for {@link Edge} data
+	 */
+	public static final class Builder<D extends Enum<D>> {
+
+		private final Class<D> type;
+		private final Map<Integer, Integer> indices = new HashMap<>();
+		private int[] values = new int[16];
+		private int nodeCount;
+		private int[] arcSources = new int[32];
+		private int[] arcTargets = new int[32];
+		private byte[] arcCodes = new byte[32];
+		private int arcCount;
+
+		/**
+		 * Creates a builder for a graph with the given edge data type
+		 *
+		 * @param type the enum class of the edge data; not null
+		 */
+		public Builder(Class<D> type) {
+			this.type = Objects.requireNonNull(type);
+			if (type.getEnumConstants().length > Byte.MAX_VALUE)
+				throw new IllegalArgumentException(type + " has too many constants");
+		}
+
+		/**
+		 * Adds a node to the graph
+		 *
+		 * @param value the node value; it is an error to add the same value
+		 *        more than once
+		 * @return the builder for chaining; never null
+		 */
+		public Builder<D> addNode(int value) {
+			if (indices.containsKey(value))
+				throw new IllegalArgumentException(new Node<>(value) + " is already in the graph");
+			if (nodeCount == values.length) values = Arrays.copyOf(values, nodeCount * 2);
+			indices.put(value, nodeCount);
+			values[nodeCount++] = value;
+			return this;
+		}
+
+		/**
+		 * Checks whether a node with the given value has been added
+		 */
+		public boolean containsNode(int value) {
+			return indices.containsKey(value);
+		}
+
+		/**
+		 * Adds an undirected edge to the graph, this adds two edges just like
+		 * {@link UndirectedGraph#addEdge(Edge)}
+		 *
+		 * @param source the source node value, must already be added
+		 * @param destination the destination node value, must already be added
+		 * @param data the edge data; not null
+		 * @return the builder for chaining; never null
+		 */
+		public Builder<D> addEdge(int source, int destination, D data) {
+			addArc(source, destination, data);
+			addArc(destination, source, data);
+			return this;
+		}
+
+		void addArc(int source, int destination, D data) {
+			Objects.requireNonNull(data);
+			Integer from = indices.get(source);
+			if (from == null) throw new IllegalArgumentException(
+					"source of edge(" + new Node<>(source) + ") is not in the graph");
+			Integer to = indices.get(destination);
+			if (to == null) throw new IllegalArgumentException(
+					"destination of edge(" + new Node<>(destination) + ") is not in the graph");
+			if (arcCount == arcTargets.length) {
+				arcSources = Arrays.copyOf(arcSources, arcCount * 2);
+				arcTargets = Arrays.copyOf(arcTargets, arcCount * 2);
+				arcCodes = Arrays.copyOf(arcCodes, arcCount * 2);
+			}
+			arcSources[arcCount] = from;
+			arcTargets[arcCount] = to;
+			arcCodes[arcCount] = (byte) data.ordinal();
+			arcCount++;
+		}
+
+		/**
+		 * @return the built graph; never null
+		 */
+		public CompactGraph<D> build() {
+			return fromArcs(type, values, nodeCount, arcSources, arcTargets, arcCodes, arcCount);
+		}
+	}
+
+}
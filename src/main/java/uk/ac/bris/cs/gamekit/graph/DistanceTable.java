@@ -0,0 +1,199 @@
+package uk.ac.bris.cs.gamekit.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs hop distances of a {@link CompactGraph}, optionally restricted to
+ * edges whose data is in a given set (e.g. taxi-only). Distances are computed
+ * once with a breadth first search from every node in parallel and stored as
+ * unsigned bytes in a single {@code n * n} array, so the table is only
+ * suitable for graphs of a few thousand nodes with a diameter below 255.
+ *
+ * Tables are immutable; use {@link #cached(CompactGraph, Set)} to share one
+ * table among all users of the same graph instance.
+ *
+ * @param <D> the type for {@link Edge} data
+ */
+public final class DistanceTable<D extends Enum<D>> {
+
+	/**
+	 * Distance reported when the destination cannot be reached
+	 */
+	public static final int UNREACHABLE = -1;
+
+	private static final int MAX_DISTANCE = 254;
+	private static final byte UNSET = (byte) 0xFF;
+
+	private final CompactGraph<D> graph;
+	private final Set<D> allowed;
+	private final int size;
+	private final byte[] distances;
+
+	private DistanceTable(CompactGraph<D> graph, Set<D> allowed) {
+		this.graph = graph;
+		this.allowed = Collections.unmodifiableSet(allowed);
+		this.size = graph.size();
+		if ((long) size * size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException(
+					"Graph with " + size + " nodes is too large for a distance table");
+		this.distances = new byte[size * size];
+		Arrays.fill(distances, UNSET);
+		long mask = 0;
+		for (D data : allowed) mask |= 1L << data.ordinal();
+		long allowedMask = mask;
+		IntStream.range(0, size).parallel().forEach(source -> search(source, allowedMask));
+	}
+
+	private DistanceTable(CompactGraph<D> graph, Set<D> allowed, byte[] distances) {
+		this.graph = graph;
+		this.allowed = Collections.unmodifiableSet(allowed);
+		this.size = graph.size();
+		if (distances.length != (long) size * size)
+			throw new IllegalArgumentException("Expected " + size + " * " + size + " distances");
+		this.distances = distances;
+	}
+
+	/**
+	 * Computes the distances of the given graph using all edges
+	 *
+	 * @param graph the graph; not null
+	 * @return the table; never null
+	 */
+	public static <D extends Enum<D>> DistanceTable<D> of(CompactGraph<D> graph) {
+		return of(graph, EnumSet.allOf(graph.dataType()));
+	}
+
+	/**
+	 * Computes the distances of the given graph using only edges whose data is
+	 * in the given set
+	 *
+	 * @param graph the graph; not null
+	 * @param allowed the edge data that may be travelled; not null
+	 * @return the table; never null
+	 */
+	public static <D extends Enum<D>> DistanceTable<D> of(CompactGraph<D> graph,
+			Set<D> allowed) {
+		Objects.requireNonNull(graph);
+		EnumSet<D> copy = EnumSet.noneOf(graph.dataType());
+		copy.addAll(Objects.requireNonNull(allowed));
+		return new DistanceTable<>(graph, copy);
+	}
+
+	/**
+	 * Same as {@link #of(CompactGraph, Set)} but the table is computed at most
+	 * once per graph instance and allowed set, later calls return the same
+	 * table. The table lives as long as the graph does.
+	 *
+	 * @param graph the graph; not null
+	 * @param allowed the edge data that may be travelled; not null
+	 * @return the shared table; never null
+	 */
+	public static <D extends Enum<D>> DistanceTable<D> cached(CompactGraph<D> graph,
+			Set<D> allowed) {
+		Objects.requireNonNull(graph);
+		EnumSet<D> copy = EnumSet.noneOf(graph.dataType());
+		copy.addAll(Objects.requireNonNull(allowed));
+		return graph.distanceTables()
+				.computeIfAbsent(copy, key -> new DistanceTable<>(graph, key));
+	}
+
+	/**
+	 * Shares distances read by {@link GraphFile} through
+	 * {@link #cached(CompactGraph, Set)}, unless a table is already cached
+	 *
+	 * @param distances the distances as returned by {@link #rawDistances()},
+	 *        owned by the table afterwards
+	 * @return the shared table; never null
+	 */
+	static <D extends Enum<D>> DistanceTable<D> preload(CompactGraph<D> graph, Set<D> allowed,
+			byte[] distances) {
+		EnumSet<D> copy = EnumSet.noneOf(graph.dataType());
+		copy.addAll(allowed);
+		DistanceTable<D> table = new DistanceTable<>(graph, copy, distances);
+		DistanceTable<D> existing = graph.distanceTables().putIfAbsent(copy, table);
+		return existing != null ? existing : table;
+	}
+
+	/**
+	 * @return the backing array, row by row as unsigned bytes with 0xFF for
+	 *         unreachable; must not be modified
+	 */
+	byte[] rawDistances() {
+		return distances;
+	}
+
+	private void search(int source, long allowedMask) {
+		int row = source * size;
+		int[] queue = new int[size];
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		distances[row + source] = 0;
+		while (head < tail) {
+			int node = queue[head++];
+			int next = (distances[row + node] & 0xFF) + 1;
+			for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+				if ((allowedMask & (1L << graph.edgeCode(e))) == 0) continue;
+				int target = graph.edgeTarget(e);
+				if (distances[row + target] != UNSET) continue;
+				if (next > MAX_DISTANCE) throw new IllegalArgumentException(
+						"Graph diameter exceeds " + MAX_DISTANCE);
+				distances[row + target] = (byte) next;
+				queue[tail++] = target;
+			}
+		}
+	}
+
+	/**
+	 * @return the graph the distances are computed for; never null
+	 */
+	public CompactGraph<D> graph() {
+		return graph;
+	}
+
+	/**
+	 * @return the edge data that may be travelled; never null
+	 */
+	public Set<D> allowed() {
+		return allowed;
+	}
+
+	/**
+	 * Distance between two nodes by index, see {@link CompactGraph#indexOf(int)}
+	 *
+	 * @param source the source node index
+	 * @param destination the destination node index
+	 * @return the number of edges on the shortest path or {@link #UNREACHABLE}
+	 */
+	public int distance(int source, int destination) {
+		int distance = distances[source * size + destination] & 0xFF;
+		return distance == (UNSET & 0xFF) ? UNREACHABLE : distance;
+	}
+
+	/**
+	 * Distance between two nodes by value
+	 *
+	 * @param source the source node value
+	 * @param destination the destination node value
+	 * @return the number of edges on the shortest path or {@link #UNREACHABLE}
+	 *         if the destination cannot be reached
+	 * @throws IllegalArgumentException if either node is not in the graph
+	 */
+	public int distanceBetween(int source, int destination) {
+		int from = graph.indexOf(source);
+		int to = graph.indexOf(destination);
+		if (from < 0 || to < 0) throw new IllegalArgumentException(
+				"Node " + (from < 0 ? source : destination) + " is not in the graph");
+		return distance(from, to);
+	}
+
+	@Override
+	public String toString() {
+		return "DistanceTable{" + "nodes=" + size + ", allowed=" + allowed + '}';
+	}
+
+}
@@ -0,0 +1,260 @@
+package uk.ac.bris.cs.gamekit.graph;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A compiled, binary form of a {@link CompactGraph} that is loaded by memory
+ * mapping the file, so even very large maps load without any parsing.
+ *
+ * The file holds the graph in compressed sparse row form (node values, edge
+ * offsets, edge targets, edge data ordinals and the order the edges were
+ * added in), optionally a position for every node and optionally a
+ * precomputed {@link DistanceTable}. All numbers are little endian:
+ *
+ * <pre>
+ * int magic, int version
+ * int constants, then for each: short length, UTF-8 name
+ * int nodes, int edges, int flags
+ * int[nodes] values, int[nodes + 1] offsets, int[edges] targets,
+ * int[edges] insertion order, byte[edges] data ordinals, padded to 4 bytes
+ * if positions: int[nodes] x, int[nodes] y
+ * if distances: int allowed ordinals mask, byte[nodes * nodes] distances
+ * </pre>
+ *
+ * A loaded distance table is shared through
+ * {@link DistanceTable#cached(CompactGraph, Set)} so it is never computed
+ * again for the loaded graph.
+ *
+ * @param <D> the type for {@link Edge} data
+ */
+public final class GraphFile<D extends Enum<D>> {
+
+	private static final int MAGIC = 0x4D47_5953; // "SYGM" in little endian
+	private static final int VERSION = 1;
+	private static final int POSITIONS = 1;
+	private static final int DISTANCES = 2;
+	private static final int NO_POSITION = Integer.MIN_VALUE;
+
+	private final CompactGraph<D> graph;
+	private final int[] xs;
+	private final int[] ys;
+	private final DistanceTable<D> distances;
+
+	private GraphFile(CompactGraph<D> graph, int[] xs, int[] ys, DistanceTable<D> distances) {
+		this.graph = graph;
+		this.xs = xs;
+		this.ys = ys;
+		this.distances = distances;
+	}
+
+	/**
+	 * @return the graph; never null
+	 */
+	public CompactGraph<D> graph() {
+		return graph;
+	}
+
+	/**
+	 * @return the positions of the nodes that have one by node value, created
+	 *         on every call; empty if the file has no positions; never null
+	 */
+	public Map<Integer, Entry<Integer, Integer>> positions() {
+		if (xs == null) return Collections.emptyMap();
+		Map<Integer, Entry<Integer, Integer>> positions = new HashMap<>();
+		for (int i = 0; i < xs.length; i++)
+			if (xs[i] != NO_POSITION)
+				positions.put(graph.valueOf(i), new SimpleImmutableEntry<>(xs[i], ys[i]));
+		return Collections.unmodifiableMap(positions);
+	}
+
+	/**
+	 * @return the precomputed distance table if the file has one; never null
+	 */
+	public Optional<DistanceTable<D>> distances() {
+		return Optional.ofNullable(distances);
+	}
+
+	/**
+	 * Writes a graph to a file, replacing it if it exists
+	 *
+	 * @param path the file; not null
+	 * @param graph the graph; not null
+	 * @param positions positions of nodes by node value, nodes without one
+	 *        are allowed; not null, empty for none
+	 * @param distances the edge data of a distance table to precompute and
+	 *        store, see {@link DistanceTable#cached(CompactGraph, Set)}; null
+	 *        for none
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a position is of a node that is not
+	 *         in the graph, or the file would be larger than 2GB
+	 */
+	public static <D extends Enum<D>> void write(Path path, CompactGraph<D> graph,
+			Map<Integer, Entry<Integer, Integer>> positions, Set<D> distances) throws IOException {
+		Objects.requireNonNull(path);
+		Objects.requireNonNull(graph);
+		Objects.requireNonNull(positions);
+		D[] constants = graph.dataType().getEnumConstants();
+		int nodes = graph.size(), edges = graph.edgeCount();
+		DistanceTable<D> table = distances == null ? null : DistanceTable.cached(graph, distances);
+
+		long size = 4 * 2 + 4;
+		byte[][] names = new byte[constants.length][];
+		for (int i = 0; i < constants.length; i++) {
+			names[i] = constants[i].name().getBytes(StandardCharsets.UTF_8);
+			size += 2 + names[i].length;
+		}
+		size += 4 * 3 + 4L * nodes + 4L * (nodes + 1) + 9L * edges + pad(edges);
+		if (!positions.isEmpty()) size += 8L * nodes;
+		if (table != null) size += 4 + (long) nodes * nodes;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Graph is too large for one file");
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(constants.length);
+			for (byte[] name : names) buffer.putShort((short) name.length).put(name);
+			buffer.putInt(nodes).putInt(edges)
+					.putInt((positions.isEmpty() ? 0 : POSITIONS) | (table == null ? 0 : DISTANCES));
+			for (int i = 0; i < nodes; i++) buffer.putInt(graph.valueOf(i));
+			for (int i = 0; i < nodes; i++) buffer.putInt(graph.edgeStart(i));
+			buffer.putInt(edges);
+			for (int e = 0; e < edges; e++) buffer.putInt(graph.edgeTarget(e));
+			for (int arc = 0; arc < edges; arc++) buffer.putInt(graph.insertedEdge(arc));
+			for (int e = 0; e < edges; e++) buffer.put((byte) graph.edgeCode(e));
+			for (int i = pad(edges); i > 0; i--) buffer.put((byte) 0);
+			if (!positions.isEmpty()) {
+				int[] xs = new int[nodes], ys = new int[nodes];
+				Arrays.fill(xs, NO_POSITION);
+				for (Entry<Integer, Entry<Integer, Integer>> entry : positions.entrySet()) {
+					int index = graph.indexOf(entry.getKey());
+					if (index < 0) throw new IllegalArgumentException(
+							"Position of " + new Node<>(entry.getKey()) + " that is not in the graph");
+					xs[index] = entry.getValue().getKey();
+					ys[index] = entry.getValue().getValue();
+				}
+				buffer.asIntBuffer().put(xs).put(ys);
+				buffer.position(buffer.position() + 8 * nodes);
+			}
+			if (table != null) {
+				int mask = 0;
+				for (D data : table.allowed()) mask |= 1 << data.ordinal();
+				buffer.putInt(mask).put(table.rawDistances());
+			}
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Loads a graph written by {@link #write(Path, CompactGraph, Map, Set)}
+	 *
+	 * @param path the file; not null
+	 * @param type the enum class of the edge data; not null
+	 * @return the loaded file; never null
+	 * @throws IOException if the file cannot be read, is not a graph file, is
+	 *         truncated or corrupt, or its edge data is not of the given type
+	 */
+	public static <D extends Enum<D>> GraphFile<D> read(Path path, Class<D> type)
+			throws IOException {
+		Objects.requireNonNull(path);
+		Objects.requireNonNull(type);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException(path + " is too large");
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return read(buffer, type);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException(path + " is not a valid graph file", e);
+		}
+	}
+
+	private static <D extends Enum<D>> GraphFile<D> read(ByteBuffer buffer, Class<D> type)
+			throws IOException {
+		if (buffer.getInt() != MAGIC) throw new IOException("Not a graph file");
+		int version = buffer.getInt();
+		if (version != VERSION) throw new IOException("Unsupported version " + version);
+		D[] constants = type.getEnumConstants();
+		if (buffer.getInt() != constants.length)
+			throw new IOException("Edge data is not of " + type);
+		for (D constant : constants) {
+			byte[] name = bytes(buffer, Short.toUnsignedInt(buffer.getShort()));
+			if (!constant.name().equals(new String(name, StandardCharsets.UTF_8)))
+				throw new IOException("Edge data is not of " + type);
+		}
+		int nodes = buffer.getInt(), edges = buffer.getInt(), flags = buffer.getInt();
+		if (nodes < 0 || edges < 0) throw new IOException("Negative size");
+		int[] values = ints(buffer, nodes);
+		int[] offsets = ints(buffer, nodes + 1L);
+		int[] targets = ints(buffer, edges);
+		int[] insertionOrder = ints(buffer, edges);
+		byte[] codes = bytes(buffer, edges);
+		bytes(buffer, pad(edges));
+		CompactGraph<D> graph = CompactGraph.fromArrays(type, values, offsets, targets, codes,
+				insertionOrder);
+		int[] xs = null, ys = null;
+		if ((flags & POSITIONS) != 0) {
+			xs = ints(buffer, nodes);
+			ys = ints(buffer, nodes);
+		}
+		DistanceTable<D> distances = null;
+		if ((flags & DISTANCES) != 0) {
+			int mask = buffer.getInt();
+			Set<D> allowed = EnumSet.noneOf(type);
+			for (D constant : constants)
+				if ((mask & (1 << constant.ordinal())) != 0) allowed.add(constant);
+			byte[] table = bytes(buffer, (long) nodes * nodes);
+			distances = DistanceTable.preload(graph, allowed, table);
+		}
+		return new GraphFile<>(graph, xs, ys, distances);
+	}
+
+	// bulk copies from the mapped file, moving the buffer past the values;
+	// sizes are checked against what is left first, so a corrupt size fails
+	// instead of allocating a huge array
+	private static int[] ints(ByteBuffer buffer, long count) throws IOException {
+		require(buffer, 4 * count);
+		int[] values = new int[(int) count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4 * values.length);
+		return values;
+	}
+
+	private static byte[] bytes(ByteBuffer buffer, long count) throws IOException {
+		require(buffer, count);
+		byte[] values = new byte[(int) count];
+		buffer.get(values);
+		return values;
+	}
+
+	private static void require(ByteBuffer buffer, long bytes) throws IOException {
+		if (bytes > buffer.remaining())
+			throw new IOException("Truncated, " + bytes + " bytes needed but "
+					+ buffer.remaining() + " left");
+	}
+
+	private static int pad(int bytes) {
+		return (4 - bytes % 4) % 4;
+	}
+
+}
@@ -76,6 +76,13 @@ public final class ImmutableGraph<V, D> extends AbstractGraph<V, D>
 		return graph.size();
 	}
 
+	/**
+	 * @return the wrapped graph
+	 */
+	Graph<V, D> unwrap() {
+		return graph;
+	}
+
 	@Override
 	public String toString() {
 		return "ImmutableGraph{" + graph + '}';
@@ -3,45 +3,91 @@ package uk.ac.bris.cs.scotlandyard.ai;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import com.google.common.collect.ImmutableSet;
 
+import javafx.geometry.Point2D;
+import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
+import uk.ac.bris.cs.gamekit.graph.Graph;
 import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.model.Colour;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Player;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGame;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+import uk.ac.bris.cs.scotlandyard.model.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
 
 /**
  * <b> Not a public API, do not use!</b> <br>
  * Internal pooling mechanism for AIs. AIs that are on the same group will share
- * a common GameFactory.
+ * a common GameFactory. Players compute their moves on the executor of the
+ * pool's {@link Execution}. With a move timeout, a move that is not accepted
+ * shortly before the timeout is committed by the pool: the best move the AI
+ * offered through its {@link AnytimeCallback}, or the first valid move, and
+ * the AI's thread is interrupted. A single timer thread shared by all pools
+ * only schedules the commit, which runs on commit threads that never compute
+ * moves, so busy players cannot delay it.
  * 
  * @param <G> the group, must be stable with proper {@link Object#hashCode()}
  *        and {@link Object#equals(Object)}
  */
 public class AIPool<G> {
 
+	// moves are committed this long before the game's timeout
+	private static final Duration DEADLINE_MARGIN = Duration.ofMillis(250);
+	private static final ScheduledExecutorService DEADLINES =
+			Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "ai-deadline");
+				thread.setDaemon(true);
+				return thread;
+			});
+	private static final ExecutorService COMMITS =
+			Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "ai-commit");
+				thread.setDaemon(true);
+				return thread;
+			});
+
 	private final VisualiserSurface surface;
 	private final Consumer<Throwable> exceptionHandler;
 	private final Map<G, AIGroup> groups = new HashMap<>();
+	private final Execution execution;
+	private final ExecutorService service;
+	private Duration moveDeadline;
 
 	public AIPool(VisualiserSurface surface, Consumer<Throwable> exceptionHandler) {
+		this(surface, exceptionHandler, Execution.shared());
+	}
+
+	public AIPool(VisualiserSurface surface, Consumer<Throwable> exceptionHandler,
+			Execution execution) {
 		this.surface = surface;
 		this.exceptionHandler = exceptionHandler;
+		this.execution = Objects.requireNonNull(execution);
+		this.service = execution.open();
 	}
 
 	public void addToGroup(G group, Colour colour, AI ai) {
@@ -49,9 +95,21 @@ public class AIPool<G> {
 	}
 
 	public void initialise(ResourceManager manager, ScotlandYardGame game) {
+		initialise((ResourceProvider) manager, game);
+	}
+
+	public void initialise(ResourceManager manager, ScotlandYardGame game, Duration moveTimeout) {
+		if (moveTimeout != null)
+			moveDeadline = moveTimeout.compareTo(DEADLINE_MARGIN.multipliedBy(2)) > 0
+					? moveTimeout.minus(DEADLINE_MARGIN)
+					: moveTimeout.dividedBy(2);
+		initialise(new TimedResourceProvider(manager, moveTimeout), game);
+	}
+
+	private void initialise(ResourceProvider provider, ScotlandYardGame game) {
 		groups.values().forEach(group -> {
 			try {
-				group.initialise(manager, game);
+				group.initialise(provider, game);
 			} catch (Exception e) {
 				e.printStackTrace();
 				exceptionHandler.accept(e);
@@ -79,6 +137,7 @@ public class AIPool<G> {
 				exceptionHandler.accept(e);
 			}
 		});
+		execution.close(service);
 		surface.onDestroy();
 	}
 
@@ -90,6 +149,90 @@ public class AIPool<G> {
 
 	}
 
+	/**
+	 * Where the players of a pool compute their moves
+	 */
+	public static final class Execution {
+
+		private static final ExecutorService SHARED = Executors.newWorkStealingPool();
+
+		private final Supplier<ExecutorService> factory;
+		private final boolean owned;
+
+		private Execution(Supplier<ExecutorService> factory, boolean owned) {
+			this.factory = factory;
+			this.owned = owned;
+		}
+
+		/**
+		 * @return one work stealing pool for every game in the JVM, a slow AI
+		 *         in one game delays the moves of all others; the default
+		 */
+		public static Execution shared() {
+			return new Execution(() -> SHARED, false);
+		}
+
+		/**
+		 * @param threads the number of moves of the game computed at once; at
+		 *        least 1
+		 * @return a pool of its own for each game, shut down when the game
+		 *         terminates
+		 */
+		public static Execution perGame(int threads) {
+			if (threads < 1) throw new IllegalArgumentException("threads < 1");
+			return new Execution(() -> Executors.newFixedThreadPool(threads, daemon()), true);
+		}
+
+		/**
+		 * @return a new virtual thread for every pending move, so blocking is
+		 *         cheap, on runtimes that have them, see
+		 *         {@link #virtualThreadsAvailable()}; a new platform thread
+		 *         otherwise
+		 */
+		public static Execution virtualThreads() {
+			return new Execution(() -> virtualThreadExecutor()
+					.orElseGet(() -> Executors.newCachedThreadPool(daemon())), true);
+		}
+
+		/**
+		 * @return whether {@link #virtualThreads()} uses virtual threads on
+		 *         this runtime
+		 */
+		public static boolean virtualThreadsAvailable() {
+			return virtualThreadExecutor().map(service -> {
+				service.shutdown();
+				return true;
+			}).orElse(false);
+		}
+
+		// looked up reflectively to keep running on runtimes without virtual threads
+		private static Optional<ExecutorService> virtualThreadExecutor() {
+			try {
+				return Optional.of((ExecutorService) Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor")
+						.invoke(null));
+			} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+				return Optional.empty();
+			}
+		}
+
+		private static ThreadFactory daemon() {
+			return runnable -> {
+				Thread thread = new Thread(runnable, "ai-player");
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+
+		ExecutorService open() {
+			return factory.get();
+		}
+
+		void close(ExecutorService service) {
+			if (owned) service.shutdownNow();
+		}
+	}
+
 	class AIGroup {
 
 		private final Map<Colour, AI> ais = new HashMap<>();
@@ -99,14 +242,14 @@ public class AIPool<G> {
 			ais.put(colour, ai);
 		}
 
-		void initialise(ResourceManager manager, ScotlandYardGame game) throws Exception {
+		void initialise(ResourceProvider provider, ScotlandYardGame game) throws Exception {
 			factories = ais.values().stream()
 					.distinct()
 					.collect(toMap(Function.identity(), AI::instantiate));
 			factories.forEach((ai, factory) -> {
 				factory.createSpectators(game).forEach(game::registerSpectator);
 				Pane pane = surface.onCreate(ai);
-				factory.ready(() -> pane, manager);
+				factory.ready(() -> pane, provider);
 			});
 		}
 
@@ -119,20 +262,61 @@ public class AIPool<G> {
 			return Optional.of(
 					new ThreadedPlayer(
 							factories.get(ais.get(colour)).createPlayer(colour),
+							service,
+							moveDeadline,
 							exceptionHandler));
 		}
 
 	}
 
-	static class ThreadedPlayer implements Player {
+	private static class TimedResourceProvider implements ResourceProvider {
+
+		private final ResourceProvider provider;
+		private final Duration moveTimeout;
+
+		private TimedResourceProvider(ResourceProvider provider, Duration moveTimeout) {
+			this.provider = provider;
+			this.moveTimeout = moveTimeout;
+		}
 
-		final static ExecutorService service = Executors.newWorkStealingPool();
+		@Override
+		public Image getMap() {
+			return provider.getMap();
+		}
+
+		@Override
+		public Image getTicket(Ticket ticket) {
+			return provider.getTicket(ticket);
+		}
+
+		@Override
+		public Graph<Integer, Transport> getGraph() {
+			return provider.getGraph();
+		}
+
+		@Override
+		public Optional<Duration> getMoveTimeout() {
+			return Optional.ofNullable(moveTimeout);
+		}
+
+		@Override
+		public Point2D coordinateAtNode(int node) {
+			return provider.coordinateAtNode(node);
+		}
+	}
+
+	static class ThreadedPlayer implements Player {
 
 		private final Player player;
+		private final ExecutorService service;
+		private final Duration deadline;
 		private final Consumer<Throwable> exceptionHandler;
 
-		private ThreadedPlayer(Player player, Consumer<Throwable> exceptionHandler) {
+		ThreadedPlayer(Player player, ExecutorService service, Duration deadline,
+				Consumer<Throwable> exceptionHandler) {
 			this.player = player;
+			this.service = service;
+			this.deadline = deadline;
 			this.exceptionHandler = exceptionHandler;
 		}
 
@@ -141,15 +325,100 @@ public class AIPool<G> {
 				int location,
 				Set<Move> moves,
 				Consumer<Move> callback) {
-			service.submit((Callable<Void>) () -> {
-				try {
-					player.makeMove(view, location, ImmutableSet.copyOf(moves), callback);
-				} catch (Throwable e) {
-					e.printStackTrace();
-					exceptionHandler.accept(e);
-				}
-				return null;
-			});
+			ImmutableSet<Move> valid = ImmutableSet.copyOf(moves);
+			Commit commit = deadline == null ? null : new Commit(valid, callback);
+			Consumer<Move> handed = commit == null ? callback : commit;
+			Future<Void> task;
+			try {
+				task = service.submit((Callable<Void>) () -> {
+					if (commit != null) commit.enter();
+					try {
+						player.makeMove(view, location, valid, handed);
+					} catch (Throwable e) {
+						e.printStackTrace();
+						exceptionHandler.accept(e);
+					} finally {
+						if (commit != null) commit.exit();
+					}
+					return null;
+				});
+			} catch (RejectedExecutionException e) {
+				// the pool was terminated, the game is no longer played
+				return;
+			}
+			if (commit != null) commit.expireAfter(deadline, task);
+		}
+
+		// hands exactly one move to the game, from the AI or when the deadline passes
+		private final class Commit implements AnytimeCallback {
+
+			private final Set<Move> moves;
+			private final Consumer<Move> callback;
+			private final AtomicBoolean committed = new AtomicBoolean();
+			private volatile Move best;
+			private volatile ScheduledFuture<?> timer;
+			// the thread running the AI, guarded by this
+			private Thread worker;
+
+			Commit(Set<Move> moves, Consumer<Move> callback) {
+				this.moves = moves;
+				this.callback = callback;
+			}
+
+			@Override
+			public void offer(Move move) {
+				if (!moves.contains(move))
+					throw new IllegalArgumentException("Move not valid: " + move);
+				best = move;
+			}
+
+			@Override
+			public void accept(Move move) {
+				if (!committed.compareAndSet(false, true)) return;
+				ScheduledFuture<?> timer = this.timer;
+				if (timer != null) timer.cancel(false);
+				callback.accept(move);
+			}
+
+			synchronized void enter() {
+				worker = Thread.currentThread();
+			}
+
+			// an interrupt that arrives as the AI returns must not reach the
+			// next task of the pool thread
+			synchronized void exit() {
+				worker = null;
+				Thread.interrupted();
+			}
+
+			// cancelling a task of a ForkJoinPool, such as the shared
+			// execution, does not interrupt it, so the thread is interrupted
+			// directly
+			private synchronized void interruptWorker() {
+				if (worker != null) worker.interrupt();
+			}
+
+			// the shared timer thread only hands the commit to a commit thread,
+			// so a slow game cannot hold up the deadlines of others, and the
+			// commit never waits behind AIs that are still computing
+			void expireAfter(Duration deadline, Future<?> task) {
+				timer = DEADLINES.schedule(() -> {
+					if (!committed.compareAndSet(false, true)) return;
+					task.cancel(true);
+					interruptWorker();
+					// the pool was terminated, the game is no longer played
+					if (service.isShutdown()) return;
+					Move move = best;
+					COMMITS.execute(() -> {
+						try {
+							callback.accept(move != null ? move : moves.iterator().next());
+						} catch (Throwable e) {
+							e.printStackTrace();
+							exceptionHandler.accept(e);
+						}
+					});
+				}, deadline.toNanos(), TimeUnit.NANOSECONDS);
+			}
 		}
 	}
 
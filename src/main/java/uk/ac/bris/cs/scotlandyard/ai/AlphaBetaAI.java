@@ -0,0 +1,442 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import uk.ac.bris.cs.gamekit.graph.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXCandidateTracker;
+import uk.ac.bris.cs.scotlandyard.model.NeighbourIndex;
+import uk.ac.bris.cs.scotlandyard.model.NodeSet;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+import uk.ac.bris.cs.scotlandyard.model.Spectator;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * An iterative deepening alpha-beta AI, mainly meant for the detectives.
+ *
+ * All detectives are searched as one side maximising the score, Mr.X as the
+ * other side minimising it, so the detectives in the tree cooperate and share
+ * one {@link TranspositionTable}. The search is paranoid: detectives do not
+ * know where Mr.X is, so he is assumed to be at the location a
+ * {@link MrXCandidateTracker} considers possible that is furthest from all
+ * detectives; right after a reveal round that is his actual location. The
+ * score is the distance of the detectives to Mr.X, or a win or loss once the
+ * game is over. Distances come from {@link ResourceProvider#getDistances()},
+ * which is shared by all games on the same map, unless the map is too large
+ * for one table.
+ *
+ * Moves are tried in the order: the best move stored in the table, the two
+ * killer moves of the ply, then detective moves closest to any location Mr.X
+ * could be at and Mr.X moves furthest from the detectives. Every iteration
+ * is searched against the deadline; when it passes, the best move of the
+ * deepest finished iteration is played, so a move is always handed to the
+ * callback in time. The best move of every finished iteration is also
+ * offered to an {@link AnytimeCallback}, and the search stops when its
+ * thread is interrupted.
+ */
+@ManagedAI("Alpha-Beta")
+public class AlphaBetaAI implements PlayerFactory {
+
+	private static final Duration DEFAULT_BUDGET = Duration.ofSeconds(2);
+	private static final Duration TIMEOUT_MARGIN = Duration.ofMillis(500);
+	private static final Duration MINIMUM_BUDGET = Duration.ofMillis(50);
+	private static final int TABLE_MEGABYTES = 32;
+	private static final int MAX_DEPTH = 64;
+	private static final int WIN = 1_000_000;
+	private static final int UNREACHABLE = Short.MAX_VALUE;
+	// larger maps compute distances per node instead of sharing a full table
+	private static final int MAX_TABLE_NODES = 4096;
+
+	private final Duration budget;
+	private MrXCandidateTracker tracker;
+	private NeighbourIndex neighbours;
+	private AtomicReferenceArray<short[]> distances;
+	private DistanceTable<Transport> distanceTable;
+	private TranspositionTable table;
+	private Duration moveBudget;
+
+	/**
+	 * Creates an AI that searches for two seconds per move
+	 */
+	public AlphaBetaAI() {
+		this(DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Creates an AI
+	 *
+	 * @param budget the time to search per move; not null
+	 */
+	public AlphaBetaAI(Duration budget) {
+		this.budget = requireNonNull(budget);
+		if (budget.isNegative() || budget.isZero())
+			throw new IllegalArgumentException("budget must be positive");
+		this.moveBudget = budget;
+	}
+
+	@Override
+	public List<Spectator> createSpectators(ScotlandYardView view) {
+		tracker = new MrXCandidateTracker(view.getGraph());
+		neighbours = tracker.neighbours();
+		distances = new AtomicReferenceArray<>(neighbours.size());
+		return Collections.singletonList(tracker);
+	}
+
+	@Override
+	public void ready(Visualiser visualiser, ResourceProvider provider) {
+		moveBudget = budget;
+		provider.getMoveTimeout().ifPresent(timeout -> {
+			Duration limit = timeout.minus(TIMEOUT_MARGIN);
+			if (limit.compareTo(MINIMUM_BUDGET) < 0) limit = MINIMUM_BUDGET;
+			if (limit.compareTo(moveBudget) < 0) moveBudget = limit;
+		});
+		// the table is shared by every game on the same map
+		if (neighbours != null && neighbours.size() <= MAX_TABLE_NODES) {
+			DistanceTable<Transport> table = provider.getDistances();
+			if (table.graph() == neighbours.graph()) distanceTable = table;
+		}
+	}
+
+	@Override
+	public Player createPlayer(Colour colour) {
+		return new AlphaBetaPlayer();
+	}
+
+	@Override
+	public synchronized void finish() {
+		if (table != null) table.release();
+		table = null;
+	}
+
+	private synchronized TranspositionTable table() {
+		if (table == null) table = TranspositionTable.acquire(TABLE_MEGABYTES);
+		return table;
+	}
+
+	private synchronized NeighbourIndex neighbours(ScotlandYardView view) {
+		if (neighbours == null) {
+			neighbours = NeighbourIndex.of(view.getGraph());
+			distances = new AtomicReferenceArray<>(neighbours.size());
+		}
+		return neighbours;
+	}
+
+	// hop distances from a node to every other node, ignoring tickets; rows
+	// are computed when first needed and shared by all searches of a game
+	private short[] distancesFrom(int node) {
+		short[] row = distances.get(node);
+		if (row != null) return row;
+		row = new short[neighbours.size()];
+		Arrays.fill(row, (short) UNREACHABLE);
+		int[] queue = new int[neighbours.size()];
+		int head = 0, tail = 0;
+		queue[tail++] = node;
+		row[node] = 0;
+		while (head < tail) {
+			int current = queue[head++];
+			for (int slot = neighbours.start(current); slot < neighbours.end(current); slot++) {
+				int next = neighbours.target(slot);
+				if (row[next] != UNREACHABLE) continue;
+				row[next] = (short) (row[current] + 1);
+				queue[tail++] = next;
+			}
+		}
+		distances.compareAndSet(node, null, row);
+		return distances.get(node);
+	}
+
+	private int distance(int from, int to) {
+		DistanceTable<Transport> table = distanceTable;
+		if (table == null) return distancesFrom(from)[to];
+		int distance = table.distance(from, to);
+		return distance == DistanceTable.UNREACHABLE ? UNREACHABLE : distance;
+	}
+
+	private class AlphaBetaPlayer implements Player {
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves,
+				Consumer<Move> callback) {
+			if (moves.size() == 1) {
+				callback.accept(moves.iterator().next());
+				return;
+			}
+			long deadline = System.nanoTime() + moveBudget.toNanos();
+			Search search = new Search(neighbours(view), view, location, deadline);
+			Move best = PackedMove.toMove(search.run(iteration -> {
+				Move move = PackedMove.toMove(iteration);
+				if (moves.contains(move)) AnytimeCallback.offer(callback, move);
+			}));
+			callback.accept(moves.contains(best) ? best : moves.iterator().next());
+		}
+	}
+
+	/**
+	 * One search for one move
+	 */
+	private final class Search {
+
+		private final NeighbourIndex neighbours;
+		private final TranspositionTable table;
+		private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		private final GameState state;
+		private final long deadline;
+		private final int[] candidateDistance;
+		private final long[][] moves;
+		private final int[][] order;
+		private final int[][] priority;
+		private final long[][] killers = new long[MAX_DEPTH][2];
+		private long nodes;
+		private long rootBest;
+		private boolean rootBestSearched;
+
+		Search(NeighbourIndex neighbours, ScotlandYardView view, int location, long deadline) {
+			this.neighbours = neighbours;
+			this.table = table();
+			this.deadline = deadline;
+			NodeSet candidates = NodeSet.of(neighbours);
+			if (view.getCurrentPlayer().isMrX()) candidates.add(neighbours.indexOf(location));
+			else if (tracker != null) candidates.copyFrom(tracker.candidates());
+			int[] detectiveDistance = distancesTo(detectiveNodes(view));
+			if (candidates.isEmpty()) candidates.fill(); // nothing is known
+			this.state = GameState.fromView(view, neighbours,
+					neighbours.valueOf(furthest(candidates, detectiveDistance)));
+			this.candidateDistance = distancesTo(candidates);
+			this.moves = new long[MAX_DEPTH + 1][state.maxMoves()];
+			this.order = new int[MAX_DEPTH + 1][state.maxMoves()];
+			this.priority = new int[MAX_DEPTH + 1][state.maxMoves()];
+		}
+
+		private NodeSet detectiveNodes(ScotlandYardView view) {
+			NodeSet detectives = NodeSet.of(neighbours);
+			for (Colour colour : view.getPlayers())
+				if (colour.isDetective())
+					view.getPlayerLocation(colour).ifPresent(l -> detectives.add(neighbours.indexOf(l)));
+			return detectives;
+		}
+
+		// the paranoid guess: the candidate not on a detective furthest from all of them
+		private int furthest(NodeSet candidates, int[] detectiveDistance) {
+			int best = -1;
+			for (int node = candidates.next(0); node >= 0; node = candidates.next(node + 1))
+				if (detectiveDistance[node] > 0
+						&& (best < 0 || detectiveDistance[node] > detectiveDistance[best]))
+					best = node;
+			return best >= 0 ? best : candidates.next(0);
+		}
+
+		// multi-source hop distances from any node of the set
+		private int[] distancesTo(NodeSet sources) {
+			int[] distance = new int[neighbours.size()];
+			Arrays.fill(distance, UNREACHABLE);
+			int[] queue = new int[neighbours.size()];
+			int head = 0, tail = 0;
+			for (int node = sources.next(0); node >= 0; node = sources.next(node + 1)) {
+				distance[node] = 0;
+				queue[tail++] = node;
+			}
+			while (head < tail) {
+				int current = queue[head++];
+				for (int slot = neighbours.start(current); slot < neighbours.end(current); slot++) {
+					int next = neighbours.target(slot);
+					if (distance[next] != UNREACHABLE) continue;
+					distance[next] = distance[current] + 1;
+					queue[tail++] = next;
+				}
+			}
+			return distance;
+		}
+
+		long run(LongConsumer finished) {
+			table.newSearch();
+			int count = state.validMoves(moves[0]);
+			if (count == 0) return PackedMove.pass(state.currentColour());
+			prioritise(0, count, 0);
+			long best = moves[0][select(0, 0, count)];
+			rootBest = best;
+			for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+				try {
+					int score = searchRoot(depth, count);
+					best = rootBest;
+					finished.accept(best);
+					if (Math.abs(score) >= WIN) break; // the outcome is decided
+				} catch (Timeout e) {
+					// a better move found before the deadline is still better
+					if (rootBestSearched) best = rootBest;
+					break;
+				}
+			}
+			return best;
+		}
+
+		private int searchRoot(int depth, int count) {
+			boolean maximise = state.currentPlayer() != 0;
+			// the previous best move is tried first
+			long previous = rootBest;
+			prioritise(0, count, previous);
+			int alpha = -WIN - 1, beta = WIN + 1;
+			rootBestSearched = false;
+			rootBest = previous;
+			for (int i = 0; i < count; i++) {
+				long move = moves[0][select(0, i, count)];
+				state.apply(move);
+				int score;
+				try {
+					score = search(depth - 1, 1, alpha, beta);
+				} finally {
+					state.undo();
+				}
+				if (maximise ? score > alpha : score < beta) {
+					if (maximise) alpha = score;
+					else beta = score;
+					rootBest = move;
+					rootBestSearched = true;
+				}
+			}
+			table.store(state.hash(), depth, TranspositionTable.EXACT, maximise ? alpha : beta,
+					rootBest);
+			return maximise ? alpha : beta;
+		}
+
+		private int search(int depth, int ply, int alpha, int beta) {
+			if ((++nodes & 0x3FF) == 0
+					&& (System.nanoTime() > deadline || Thread.currentThread().isInterrupted()))
+				throw Timeout.INSTANCE;
+			if (state.isGameOver()) return state.detectivesWin() ? WIN : -WIN;
+			if (depth == 0 || ply >= MAX_DEPTH) return evaluate();
+
+			long key = state.hash();
+			long tableMove = 0;
+			if (table.probe(key, entry)) {
+				tableMove = entry.move;
+				if (entry.depth >= depth) {
+					if (entry.bound == TranspositionTable.EXACT) return entry.score;
+					if (entry.bound == TranspositionTable.LOWER) alpha = Math.max(alpha, entry.score);
+					else beta = Math.min(beta, entry.score);
+					if (alpha >= beta) return entry.score;
+				}
+			}
+
+			int count = state.validMoves(moves[ply]);
+			if (count == 0) return WIN; // Mr.X is stuck
+			prioritise(ply, count, tableMove);
+			boolean maximise = state.currentPlayer() != 0;
+			int originalAlpha = alpha, originalBeta = beta;
+			int best = maximise ? -WIN - 1 : WIN + 1;
+			long bestMove = 0;
+			for (int i = 0; i < count; i++) {
+				long move = moves[ply][select(ply, i, count)];
+				state.apply(move);
+				int score;
+				try {
+					score = search(depth - 1, ply + 1, alpha, beta);
+				} finally {
+					state.undo();
+				}
+				if (i == 0 || (maximise ? score > best : score < best)) {
+					best = score;
+					bestMove = move;
+				}
+				if (maximise) alpha = Math.max(alpha, score);
+				else beta = Math.min(beta, score);
+				if (alpha >= beta) {
+					if (killers[ply][0] != move) {
+						killers[ply][1] = killers[ply][0];
+						killers[ply][0] = move;
+					}
+					break;
+				}
+			}
+			int bound = best <= originalAlpha ? TranspositionTable.UPPER
+					: best >= originalBeta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, Math.min(depth, 0xFF), bound, best, bestMove);
+			return best;
+		}
+
+		// detectives want to be close to Mr.X, the closest one counts the most
+		private int evaluate() {
+			int mrX = neighbours.indexOf(state.location(0));
+			int closest = UNREACHABLE, total = 0;
+			for (int i = 1; i < state.playerCount(); i++) {
+				int distance = distance(mrX, neighbours.indexOf(state.location(i)));
+				closest = Math.min(closest, distance);
+				total += distance;
+			}
+			return -(closest * 16 + total);
+		}
+
+		// scores the moves of a ply for select, nothing is sorted yet as a
+		// cut-off usually comes after the first few moves
+		private void prioritise(int ply, int count, long first) {
+			long[] plyMoves = moves[ply];
+			int[] plyOrder = order[ply];
+			int[] plyPriority = priority[ply];
+			boolean mrX = state.currentPlayer() == 0;
+			for (int i = 0; i < count; i++) {
+				long move = plyMoves[i];
+				int value;
+				if (move == first) value = Integer.MAX_VALUE;
+				else if (move == killers[ply][0]) value = Integer.MAX_VALUE - 1;
+				else if (move == killers[ply][1]) value = Integer.MAX_VALUE - 2;
+				else if (PackedMove.kind(move) == PackedMove.PASS) value = Integer.MIN_VALUE;
+				else {
+					int destination = neighbours.indexOf(PackedMove.finalDestination(move));
+					value = mrX ? closestDetective(destination) : -candidateDistance[destination];
+				}
+				plyOrder[i] = i;
+				plyPriority[i] = value;
+			}
+		}
+
+		// swaps the highest priority move not tried yet into the given position
+		// and returns its index in the ply's moves, ties go to the move
+		// generated first
+		private int select(int ply, int position, int count) {
+			int[] plyOrder = order[ply];
+			int[] plyPriority = priority[ply];
+			int best = position;
+			for (int i = position + 1; i < count; i++)
+				if (plyPriority[i] > plyPriority[best]
+						|| (plyPriority[i] == plyPriority[best] && plyOrder[i] < plyOrder[best]))
+					best = i;
+			int swapOrder = plyOrder[best];
+			int swapPriority = plyPriority[best];
+			plyOrder[best] = plyOrder[position];
+			plyPriority[best] = plyPriority[position];
+			plyOrder[position] = swapOrder;
+			plyPriority[position] = swapPriority;
+			return swapOrder;
+		}
+
+		private int closestDetective(int node) {
+			int closest = UNREACHABLE;
+			for (int i = 1; i < state.playerCount(); i++)
+				closest = Math.min(closest, distance(node, neighbours.indexOf(state.location(i))));
+			return closest;
+		}
+	}
+
+	// thrown to unwind the search once the deadline has passed or it was interrupted
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		static final Timeout INSTANCE = new Timeout();
+
+		private Timeout() {
+			super(null, null, false, false);
+		}
+	}
+
+}
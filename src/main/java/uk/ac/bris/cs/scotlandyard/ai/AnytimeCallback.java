@@ -0,0 +1,37 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.function.Consumer;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * The callback handed to AI players whose moves have a deadline. Besides
+ * accepting the final move it takes the best move found so far, which is
+ * played if the deadline passes before the final move is accepted. The
+ * player's thread is interrupted at that point and moves accepted later are
+ * ignored.
+ *
+ * Players should publish through {@link #offer(Consumer, Move)}, which does
+ * nothing for callbacks without a deadline.
+ */
+public interface AnytimeCallback extends Consumer<Move> {
+
+	/**
+	 * Publishes the best move found so far, replacing the previous one
+	 *
+	 * @param move one of the valid moves; not null
+	 * @throws IllegalArgumentException if the move is not valid
+	 */
+	void offer(Move move);
+
+	/**
+	 * Publishes the best move found so far if the callback takes one
+	 *
+	 * @param callback the callback the player was given; not null
+	 * @param move one of the valid moves; not null
+	 */
+	static void offer(Consumer<Move> callback, Move move) {
+		if (callback instanceof AnytimeCallback) ((AnytimeCallback) callback).offer(move);
+	}
+
+}
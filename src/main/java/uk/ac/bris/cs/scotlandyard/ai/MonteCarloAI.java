@@ -0,0 +1,317 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXBeliefTracker;
+import uk.ac.bris.cs.scotlandyard.model.MrXCandidateTracker;
+import uk.ac.bris.cs.scotlandyard.model.NeighbourIndex;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+import uk.ac.bris.cs.scotlandyard.model.Spectator;
+
+/**
+ * A Monte Carlo tree search AI for both Mr.X and the detectives.
+ *
+ * Every move is searched with UCT on a {@link GameState}, which follows the
+ * rules of the model, using random play outs. Mr.X knows the whole state, so
+ * all workers grow one shared tree with a {@link ParallelTreeSearch}.
+ * Detectives do not know where Mr.X is, so their search is root parallel
+ * instead: every worker samples his location from the ones a
+ * {@link MrXCandidateTracker} considers possible, weighted by the
+ * probabilities of a {@link MrXBeliefTracker}, and grows its own tree, and
+ * the visit counts of the root moves are added up at the end.
+ *
+ * Each move is given the per-move budget, but never more than the game's
+ * move timeout (see {@link ResourceProvider#getMoveTimeout()}) minus a safety
+ * margin.
+ */
+@ManagedAI("Monte Carlo")
+public class MonteCarloAI implements PlayerFactory {
+
+	private static final Duration DEFAULT_BUDGET = Duration.ofSeconds(2);
+	private static final Duration TIMEOUT_MARGIN = Duration.ofMillis(500);
+	private static final Duration MINIMUM_BUDGET = Duration.ofMillis(50);
+	private static final double EXPLORATION = Math.sqrt(2);
+
+	private final Duration budget;
+	private final int threads;
+	private final SplittableRandom seeds = new SplittableRandom();
+	private MrXCandidateTracker tracker;
+	private MrXBeliefTracker belief;
+	private NeighbourIndex neighbours;
+	private Duration moveBudget;
+	private ExecutorService workers;
+	private ParallelTreeSearch sharedSearch;
+
+	/**
+	 * Creates an AI that searches for two seconds per move on every available
+	 * core
+	 */
+	public MonteCarloAI() {
+		this(DEFAULT_BUDGET, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an AI
+	 *
+	 * @param budget the time to search per move; not null
+	 * @param threads the number of trees searched in parallel; at least 1
+	 */
+	public MonteCarloAI(Duration budget, int threads) {
+		this.budget = requireNonNull(budget);
+		if (budget.isNegative() || budget.isZero())
+			throw new IllegalArgumentException("budget must be positive");
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.threads = threads;
+		this.moveBudget = budget;
+	}
+
+	@Override
+	public List<Spectator> createSpectators(ScotlandYardView view) {
+		tracker = new MrXCandidateTracker(view.getGraph());
+		neighbours = tracker.neighbours();
+		belief = new MrXBeliefTracker(neighbours);
+		return Arrays.asList(tracker, belief);
+	}
+
+	@Override
+	public void ready(Visualiser visualiser, ResourceProvider provider) {
+		if (neighbours == null) neighbours = NeighbourIndex.of(provider.getGraph());
+		moveBudget = budget;
+		provider.getMoveTimeout().ifPresent(timeout -> {
+			Duration limit = timeout.minus(TIMEOUT_MARGIN);
+			if (limit.compareTo(MINIMUM_BUDGET) < 0) limit = MINIMUM_BUDGET;
+			if (limit.compareTo(moveBudget) < 0) moveBudget = limit;
+		});
+	}
+
+	private synchronized ExecutorService workers() {
+		if (workers == null) workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "monte-carlo-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		return workers;
+	}
+
+	private synchronized ParallelTreeSearch sharedSearch() {
+		if (sharedSearch == null) sharedSearch = new ParallelTreeSearch(threads);
+		return sharedSearch;
+	}
+
+	@Override
+	public Player createPlayer(Colour colour) {
+		return new MonteCarloPlayer();
+	}
+
+	@Override
+	public synchronized void finish() {
+		if (workers != null) workers.shutdownNow();
+		if (sharedSearch != null) sharedSearch.close();
+	}
+
+	private class MonteCarloPlayer implements Player {
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves,
+				Consumer<Move> callback) {
+			if (moves.size() == 1) {
+				callback.accept(moves.iterator().next());
+				return;
+			}
+			if (neighbours == null) neighbours = NeighbourIndex.of(view.getGraph());
+			long deadline = System.nanoTime() + moveBudget.toNanos();
+			if (view.getCurrentPlayer().isMrX()) {
+				GameState root = GameState.fromView(view, neighbours, location);
+				long best = sharedSearch().search(root, deadline).bestMove();
+				callback.accept(best != -1 && moves.contains(PackedMove.toMove(best))
+						? PackedMove.toMove(best) : moves.iterator().next());
+				return;
+			}
+			int[] candidates = tracker == null ? new int[0] : tracker.candidateLocations();
+			double[] weights = new double[candidates.length];
+			for (int i = 0; i < candidates.length; i++)
+				weights[i] = belief.probability(neighbours.indexOf(candidates[i]));
+
+			List<Future<Map<Long, Integer>>> searches = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				SplittableRandom random = seeds.split();
+				GameState root = GameState.fromView(view, neighbours,
+						sampleMrX(view, candidates, weights, random));
+				searches.add(workers().submit(() -> new Search(root, random).run(deadline)));
+			}
+
+			Map<Long, Integer> visits = new HashMap<>();
+			for (Future<Map<Long, Integer>> search : searches) {
+				try {
+					search.get().forEach((move, count) -> visits.merge(move, count, Integer::sum));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			Move best = null;
+			int mostVisits = -1;
+			for (Map.Entry<Long, Integer> entry : visits.entrySet()) {
+				Move move = PackedMove.toMove(entry.getKey());
+				if (entry.getValue() > mostVisits && moves.contains(move)) {
+					best = move;
+					mostVisits = entry.getValue();
+				}
+			}
+			callback.accept(best != null ? best : moves.iterator().next());
+		}
+
+		// a candidate that is not on a detective, Mr.X would have been caught there,
+		// picked by its weight or uniformly if none of them has any
+		private int sampleMrX(ScotlandYardView view, int[] candidates, double[] weights,
+				SplittableRandom random) {
+			List<Integer> occupied = new ArrayList<>();
+			for (Colour colour : view.getPlayers())
+				if (colour.isDetective()) view.getPlayerLocation(colour).ifPresent(occupied::add);
+			List<Integer> possible = new ArrayList<>();
+			double total = 0;
+			for (int i = 0; i < candidates.length; i++) {
+				if (occupied.contains(candidates[i])) continue;
+				possible.add(i);
+				total += weights[i];
+			}
+			if (total > 0) {
+				double target = random.nextDouble() * total;
+				for (int i : possible) {
+					target -= weights[i];
+					if (target < 0) return candidates[i];
+				}
+				return candidates[possible.get(possible.size() - 1)];
+			}
+			if (!possible.isEmpty()) return candidates[possible.get(random.nextInt(possible.size()))];
+			while (true) { // nothing is known, anywhere will do
+				int location = neighbours.valueOf(random.nextInt(neighbours.size()));
+				if (!occupied.contains(location)) return location;
+			}
+		}
+	}
+
+	/**
+	 * One UCT tree, only used by the worker thread that runs it
+	 */
+	private static class Search {
+
+		private final GameState state;
+		private final SplittableRandom random;
+		private final long[] moves;
+		private final Node root;
+
+		Search(GameState state, SplittableRandom random) {
+			this.state = state;
+			this.random = random;
+			this.moves = new long[state.maxMoves()];
+			this.root = new Node(null, 0, false, state, moves);
+		}
+
+		Map<Long, Integer> run(long deadline) {
+			do {
+				for (int i = 0; i < 64; i++) iterate();
+			} while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted());
+			Map<Long, Integer> visits = new HashMap<>();
+			for (Node child : root.children) visits.put(child.move, child.visits);
+			return visits;
+		}
+
+		private void iterate() {
+			Node node = root;
+			while (node.untried == 0 && !node.children.isEmpty()) {
+				node = node.select();
+				state.apply(node.move);
+			}
+			if (node.untried > 0 && !state.isGameOver()) {
+				int pick = random.nextInt(node.untried);
+				long move = node.moves[pick];
+				node.moves[pick] = node.moves[--node.untried];
+				boolean mrX = state.currentPlayer() == 0;
+				state.apply(move);
+				node = node.add(new Node(node, move, mrX, state, moves));
+			}
+			double mrXScore = playOut();
+			while (state.depth() > 0) state.undo();
+			for (; node != null; node = node.parent) {
+				node.visits++;
+				node.score += node.mrX ? mrXScore : 1 - mrXScore;
+			}
+		}
+
+		// plays random moves until the game is over, undone by the caller
+		private double playOut() {
+			while (!state.isGameOver()) {
+				int count = state.validMoves(moves);
+				if (count == 0) return 0; // Mr.X is stuck
+				state.apply(moves[random.nextInt(count)]);
+			}
+			boolean mrXWins = state.mrXWins();
+			boolean detectivesWin = state.detectivesWin();
+			return mrXWins == detectivesWin ? 0.5 : mrXWins ? 1 : 0;
+		}
+	}
+
+	private static class Node {
+
+		final Node parent;
+		final long move;
+		final boolean mrX;
+		final long[] moves;
+		final List<Node> children = new ArrayList<>();
+		int untried;
+		int visits;
+		double score;
+
+		Node(Node parent, long move, boolean mrX, GameState state, long[] buffer) {
+			this.parent = parent;
+			this.move = move;
+			this.mrX = mrX;
+			this.untried = state.isGameOver() ? 0 : state.validMoves(buffer);
+			this.moves = Arrays.copyOf(buffer, untried);
+		}
+
+		Node add(Node child) {
+			children.add(child);
+			return child;
+		}
+
+		// the child with the highest upper confidence bound
+		Node select() {
+			double log = Math.log(visits);
+			Node best = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (Node child : children) {
+				double value = child.score / child.visits
+						+ EXPLORATION * Math.sqrt(log / child.visits);
+				if (value > bestValue) {
+					best = child;
+					bestValue = value;
+				}
+			}
+			return best;
+		}
+	}
+
+}
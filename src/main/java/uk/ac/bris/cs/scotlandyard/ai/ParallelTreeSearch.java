@@ -0,0 +1,359 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.GameState;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.PlayerConfiguration;
+import uk.ac.bris.cs.scotlandyard.model.StandardGame;
+
+/**
+ * A Monte Carlo tree search where several workers grow one shared tree.
+ *
+ * Workers run on a dedicated {@link ForkJoinPool}, separate from the threads
+ * that call {@link uk.ac.bris.cs.scotlandyard.model.Player#makeMove}, and
+ * each walks its own copy of the root {@link GameState}. Visit counts and
+ * scores are atomic counters on the nodes and children are published with a
+ * single compare-and-set, so no locks are taken. While a worker is below a
+ * node the node carries a virtual loss: it counts as visited
+ * {@link #VIRTUAL_LOSS} times without any score, which steers other workers
+ * towards different branches until the play out is backed up.
+ *
+ * Scores are from Mr.X's point of view, 1 for a win and 0 for a loss; nodes
+ * reached by a detective move use the complement. Close with {@link #close()}
+ * to stop the workers.
+ */
+public final class ParallelTreeSearch implements AutoCloseable {
+
+	/**
+	 * Number of visits without score a worker adds to every node on its path
+	 */
+	public static final int VIRTUAL_LOSS = 3;
+
+	private static final double EXPLORATION = Math.sqrt(2);
+	private static final double SCALE = 1 << 16;
+
+	/**
+	 * Plays a game from the given state to the end
+	 */
+	@FunctionalInterface
+	public interface Playout {
+
+		/**
+		 * @param state the state to play from, moves applied to it are undone
+		 *        by the caller; never null
+		 * @param buffer a buffer of {@link GameState#maxMoves()} moves; never
+		 *        null
+		 * @param random the worker's random source; never null
+		 * @return Mr.X's score in {@code [0, 1]}
+		 */
+		double play(GameState state, long[] buffer, SplittableRandom random);
+
+		/**
+		 * Plays random moves until the game is over
+		 */
+		Playout RANDOM = (state, buffer, random) -> {
+			while (!state.isGameOver()) {
+				int count = state.validMoves(buffer);
+				if (count == 0) return 0; // Mr.X is stuck
+				state.apply(buffer[random.nextInt(count)]);
+			}
+			boolean mrXWins = state.mrXWins();
+			return mrXWins == state.detectivesWin() ? 0.5 : mrXWins ? 1 : 0;
+		};
+	}
+
+	private final ForkJoinPool pool;
+	private final Playout playout;
+	private final SplittableRandom seeds = new SplittableRandom();
+
+	/**
+	 * Creates a search with random play outs
+	 *
+	 * @param parallelism the number of workers; at least 1
+	 */
+	public ParallelTreeSearch(int parallelism) {
+		this(parallelism, Playout.RANDOM);
+	}
+
+	/**
+	 * Creates a search
+	 *
+	 * @param parallelism the number of workers; at least 1
+	 * @param playout the play out policy, must be thread safe; not null
+	 */
+	public ParallelTreeSearch(int parallelism, Playout playout) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1");
+		this.playout = Objects.requireNonNull(playout);
+		this.pool = new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("tree-search-" + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * @return the number of workers
+	 */
+	public int parallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Searches the given state until the deadline
+	 *
+	 * @param root the state to search, it is copied and not modified; not null
+	 * @param deadline the {@link System#nanoTime()} to stop at
+	 * @return the result; never null
+	 */
+	public Result search(GameState root, long deadline) {
+		Objects.requireNonNull(root);
+		long start = System.nanoTime();
+		Node tree = new Node(0, false);
+		AtomicLong playouts = new AtomicLong();
+		List<ForkJoinTask<?>> workers = new ArrayList<>();
+		for (int i = 0; i < pool.getParallelism(); i++) {
+			GameState state = root.copy();
+			SplittableRandom random;
+			synchronized (seeds) {
+				random = seeds.split();
+			}
+			workers.add(pool.submit(() -> {
+				long[] buffer = new long[state.maxMoves()];
+				Node[] path = new Node[64];
+				long count = 0;
+				do {
+					for (int n = 0; n < 16; n++) path = iterate(tree, state, buffer, path, random);
+					count += 16;
+				} while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted());
+				playouts.addAndGet(count);
+			}));
+		}
+		for (ForkJoinTask<?> worker : workers) worker.join();
+
+		Map<Long, Integer> visits = new HashMap<>();
+		Node[] children = tree.children;
+		if (children != null)
+			for (Node child : children) visits.put(child.move, child.visits);
+		return new Result(visits, playouts.get(), System.nanoTime() - start);
+	}
+
+	// walks one path from the root, returns the path buffer for the next
+	// iteration, grown if the path did not fit
+	private Node[] iterate(Node root, GameState state, long[] buffer, Node[] path,
+			SplittableRandom random) {
+		int length = 0;
+		Node node = root;
+		node.addVisits(VIRTUAL_LOSS);
+		path[length++] = node;
+		while (!state.isGameOver()) {
+			Node[] children = node.children;
+			if (children == null) {
+				// expand once the node has been played out from at least once
+				if (node != root && node.visits <= VIRTUAL_LOSS) break;
+				children = node.expand(state, buffer);
+				if (children.length == 0) break;
+			}
+			node = select(node, children);
+			state.apply(node.move);
+			node.addVisits(VIRTUAL_LOSS);
+			if (length == path.length) path = Arrays.copyOf(path, length * 2);
+			path[length++] = node;
+		}
+		double mrXScore = playout.play(state, buffer, random);
+		while (state.depth() > 0) state.undo();
+		for (int i = 0; i < length; i++) path[i].backUp(path[i].mrX ? mrXScore : 1 - mrXScore);
+		return path;
+	}
+
+	private static Node select(Node parent, Node[] children) {
+		double log = Math.log(Math.max(1, parent.visits));
+		Node best = children[0];
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (Node child : children) {
+			int visits = child.visits;
+			if (visits == 0) return child;
+			double value = child.score() / visits + EXPLORATION * Math.sqrt(log / visits);
+			if (value > bestValue) {
+				best = child;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Stops the workers
+	 */
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Measures play outs per second from the start of a standard game with
+	 * five detectives, for 1, 2, 4... workers up to the given parallelism:
+	 * {@code [seconds per run=5] [parallelism=cores] [seed=0]}
+	 *
+	 * @param args the arguments
+	 * @throws IOException if the standard map cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+		int maxParallelism = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		int seed = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+		Player idle = (view, location, moves, callback) -> {};
+		List<Integer> locations = StandardGame.generateDetectiveLocations(seed, 5);
+		PlayerConfiguration[] detectives = new PlayerConfiguration[locations.size()];
+		for (int i = 0; i < detectives.length; i++)
+			detectives[i] = new PlayerConfiguration.Builder(Colour.values()[i + 1]).using(idle)
+					.with(StandardGame.generateDetectiveTickets()).at(locations.get(i)).build();
+		PlayerConfiguration mrX = new PlayerConfiguration.Builder(Colour.BLACK).using(idle)
+				.with(StandardGame.generateMrXTickets())
+				.at(StandardGame.generateMrXLocation(seed)).build();
+		GameState root = GameState.of(StandardGame.ROUNDS, StandardGame.standardGraph(), mrX,
+				detectives[0], Arrays.copyOfRange(detectives, 1, detectives.length));
+
+		for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, maxParallelism)) {
+			try (ParallelTreeSearch search = new ParallelTreeSearch(parallelism)) {
+				Result result = search.search(root, System.nanoTime() + (long) (seconds * 1e9));
+				System.out.printf("%d workers: %.0f playouts/s, %.0f per worker%n", parallelism,
+						result.playoutsPerSecond(), result.playoutsPerSecond() / parallelism);
+			}
+			if (parallelism >= maxParallelism) break;
+		}
+	}
+
+	/**
+	 * The outcome of {@link #search(GameState, long)}
+	 */
+	public static final class Result {
+
+		private final Map<Long, Integer> visits;
+		private final long playouts;
+		private final long nanos;
+
+		private Result(Map<Long, Integer> visits, long playouts, long nanos) {
+			this.visits = Collections.unmodifiableMap(visits);
+			this.playouts = playouts;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the visits of every root move as {@link PackedMove}s; never
+		 *         null
+		 */
+		public Map<Long, Integer> visits() {
+			return visits;
+		}
+
+		/**
+		 * @return the most visited root move, or -1 if the root has no moves
+		 */
+		public long bestMove() {
+			long best = -1;
+			int mostVisits = -1;
+			for (Map.Entry<Long, Integer> entry : visits.entrySet()) {
+				if (entry.getValue() > mostVisits) {
+					best = entry.getKey();
+					mostVisits = entry.getValue();
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * @return the number of play outs of all workers
+		 */
+		public long playouts() {
+			return playouts;
+		}
+
+		/**
+		 * @return play outs per second of wall clock time, divide by the
+		 *         parallelism to compare the scaling of different worker counts
+		 */
+		public double playoutsPerSecond() {
+			return nanos == 0 ? 0 : playouts * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Result{playouts=%d, playouts/s=%.0f, moves=%d}",
+					playouts, playoutsPerSecond(), visits.size());
+		}
+	}
+
+	private static final class Node {
+
+		private static final VarHandle VISITS;
+		private static final VarHandle SCORE;
+		private static final VarHandle CHILDREN;
+
+		static {
+			try {
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+				SCORE = lookup.findVarHandle(Node.class, "scaledScore", long.class);
+				CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+			} catch (ReflectiveOperationException e) {
+				throw new ExceptionInInitializerError(e);
+			}
+		}
+
+		final long move;
+		final boolean mrX;
+		volatile int visits;
+		// the score in fixed point so it can be added atomically
+		volatile long scaledScore;
+		volatile Node[] children;
+
+		Node(long move, boolean mrX) {
+			this.move = move;
+			this.mrX = mrX;
+		}
+
+		double score() {
+			return scaledScore / SCALE;
+		}
+
+		void addVisits(int count) {
+			VISITS.getAndAdd(this, count);
+		}
+
+		// replaces the virtual loss of this play out with a real visit
+		void backUp(double score) {
+			VISITS.getAndAdd(this, 1 - VIRTUAL_LOSS);
+			SCORE.getAndAdd(this, Math.round(score * SCALE));
+		}
+
+		Node[] expand(GameState state, long[] buffer) {
+			int count = state.validMoves(buffer);
+			boolean mrX = state.currentPlayer() == 0;
+			Node[] created = new Node[count];
+			for (int i = 0; i < count; i++) created[i] = new Node(buffer[i], mrX);
+			Node[] existing = (Node[]) CHILDREN.compareAndExchange(this, null, created);
+			return existing != null ? existing : created;
+		}
+	}
+
+}
@@ -1,7 +1,14 @@
 package uk.ac.bris.cs.scotlandyard.ai;
 
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
 import javafx.geometry.Point2D;
 import javafx.scene.image.Image;
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.DistanceTable;
 import uk.ac.bris.cs.gamekit.graph.Graph;
 import uk.ac.bris.cs.scotlandyard.model.Ticket;
 import uk.ac.bris.cs.scotlandyard.model.Transport;
@@ -30,12 +37,52 @@ public interface ResourceProvider {
 
 	/**
 	 * Retrieves an immutable copy of the game graph that is identical to the
-	 * current game
+	 * current game. Implementations should return the same graph backed by a
+	 * {@link CompactGraph} on every call (e.g. an {@link
+	 * uk.ac.bris.cs.gamekit.graph.ImmutableGraph} wrapping one), otherwise
+	 * {@link #getDistances(Set)} recomputes its table on every call.
 	 * 
 	 * @return the game graph; never null
 	 */
 	Graph<Integer, Transport> getGraph();
 
+	/**
+	 * Retrieves the all-pairs hop distances of {@link #getGraph()} using every
+	 * transport. The table is computed once and shared by every factory using
+	 * the same graph.
+	 *
+	 * @return the distance table; never null
+	 */
+	default DistanceTable<Transport> getDistances() {
+		return getDistances(EnumSet.allOf(Transport.class));
+	}
+
+	/**
+	 * Retrieves the all-pairs hop distances of {@link #getGraph()} using only
+	 * the given transports, e.g. {@code EnumSet.of(Transport.TAXI)} for a
+	 * taxi-only table. The table is computed once and shared by every factory
+	 * using the same graph, as long as {@link #getGraph()} is backed by a
+	 * {@link CompactGraph}; any other graph is copied on every call, so the
+	 * table is computed again each time.
+	 *
+	 * @param transports the transports that may be used; not null
+	 * @return the distance table; never null
+	 */
+	default DistanceTable<Transport> getDistances(Set<Transport> transports) {
+		return DistanceTable.cached(CompactGraph.copyOf(getGraph(), Transport.class), transports);
+	}
+
+	/**
+	 * Retrieves the time a player has to pick a move as configured for the
+	 * current game, AIs that search until a deadline should finish well
+	 * within it
+	 *
+	 * @return the timeout, defaults to empty if there is none; never null
+	 */
+	default Optional<Duration> getMoveTimeout() {
+		return Optional.empty();
+	}
+
 	/**
 	 * Retrieves the position of node on the map image retrieved using
 	 * {@link #getMap()}
@@ -0,0 +1,229 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+import uk.ac.bris.cs.scotlandyard.model.GameState;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Zobrist;
+
+/**
+ * A fixed size, lock free transposition table for game tree search, keyed by
+ * 64 bit position hashes such as {@link GameState#hash()} (see
+ * {@link Zobrist}).
+ *
+ * Every entry takes three {@code long}s of one flat array: a check word, the
+ * search data (depth, bound, score and age) and the best move as a
+ * {@link PackedMove}. The check word is the key xor-ed with the other two
+ * words, so an entry torn by concurrent writers simply fails to match on
+ * {@link #probe(long, Entry)} and no locking is needed. Entries are stored in
+ * buckets of two; a new entry replaces the one with the same key, otherwise
+ * an entry from an older search, otherwise the shallower one.
+ *
+ * Players of the same side share one {@link PlayerFactory}, so a table
+ * created by the factory is shared by all of them, e.g. all detectives of an
+ * {@link AIPool} group. {@link #acquire(int)} and {@link #release()} let the
+ * factories of consecutive games reuse the same memory, the pool keeps at
+ * most two released tables of each size:
+ *
+ * <pre>
+ * public void ready(Visualiser visualiser, ResourceProvider provider) {
+ * 	table = TranspositionTable.acquire(64);
+ * }
+ *
+ * public void finish() {
+ * 	table.release();
+ * }
+ * </pre>
+ */
+public final class TranspositionTable {
+
+	/**
+	 * The score is exact
+	 */
+	public static final int EXACT = 0;
+	/**
+	 * The score is a lower bound, the search failed high
+	 */
+	public static final int LOWER = 1;
+	/**
+	 * The score is an upper bound, the search failed low
+	 */
+	public static final int UPPER = 2;
+
+	private static final int WORDS = 3;
+	private static final int BUCKET = 2;
+	private static final long USED = 1L << 63;
+	// one for each side, more only pile up when many games run at once
+	private static final int POOLED_PER_SIZE = 2;
+
+	private static final Deque<TranspositionTable> pool = new ArrayDeque<>();
+
+	private final int megabytes;
+	private final long[] table;
+	private final int mask;
+	private volatile int age;
+
+	/**
+	 * Creates a table
+	 *
+	 * @param megabytes the memory to use, the number of entries is rounded
+	 *        down to a power of two; at least 1
+	 */
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1) throw new IllegalArgumentException("megabytes < 1");
+		this.megabytes = megabytes;
+		long entries = Long.highestOneBit(((long) megabytes << 20) / (WORDS * Long.BYTES));
+		entries = Math.min(entries, Integer.highestOneBit(Integer.MAX_VALUE / WORDS));
+		this.table = new long[(int) entries * WORDS];
+		this.mask = (int) entries - BUCKET;
+	}
+
+	/**
+	 * Takes a previously released table of the given size, or creates one
+	 * if there are none. The table is cleared before it is returned.
+	 *
+	 * @param megabytes the memory to use; at least 1
+	 * @return a table for exclusive use until {@link #release()}; never null
+	 */
+	public static TranspositionTable acquire(int megabytes) {
+		synchronized (pool) {
+			for (Iterator<TranspositionTable> it = pool.iterator(); it.hasNext(); ) {
+				TranspositionTable table = it.next();
+				if (table.megabytes == megabytes) {
+					it.remove();
+					table.clear();
+					return table;
+				}
+			}
+		}
+		return new TranspositionTable(megabytes);
+	}
+
+	/**
+	 * Returns this table to the pool used by {@link #acquire(int)}, it must not
+	 * be used afterwards. The table is left to the garbage collector if the
+	 * pool already holds enough tables of its size.
+	 */
+	public void release() {
+		synchronized (pool) {
+			int sameSize = 0;
+			for (TranspositionTable table : pool) {
+				if (table == this) return;
+				if (table.megabytes == megabytes) sameSize++;
+			}
+			if (sameSize < POOLED_PER_SIZE) pool.push(this);
+		}
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int capacity() {
+		return table.length / WORDS;
+	}
+
+	/**
+	 * Removes all entries
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		age = 0;
+	}
+
+	/**
+	 * Starts a new search, entries from earlier searches are kept but are the
+	 * first to be replaced
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Stores the result of a search
+	 *
+	 * @param key the position hash
+	 * @param depth the remaining depth searched, in {@code [0, 255]}
+	 * @param bound one of {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+	 * @param score the score
+	 * @param move the best move found as a {@link PackedMove}
+	 */
+	public void store(long key, int depth, int bound, int score, long move) {
+		if (depth < 0 || depth > 0xFF) throw new IllegalArgumentException("depth " + depth);
+		if (bound < EXACT || bound > UPPER) throw new IllegalArgumentException("bound " + bound);
+		int currentAge = age;
+		long data = USED | ((long) currentAge << 40) | ((long) bound << 48) | ((long) depth << 32)
+				| (score & 0xFFFFFFFFL);
+		int first = bucket(key);
+		int target = first;
+		int worst = Integer.MAX_VALUE;
+		for (int slot = first; slot < first + BUCKET; slot++) {
+			int offset = slot * WORDS;
+			long oldData = table[offset + 1];
+			if ((table[offset] ^ oldData ^ table[offset + 2]) == key || oldData == 0) {
+				target = slot;
+				break;
+			}
+			// stale entries first, then the shallowest
+			int value = depthOf(oldData) + (ageOf(oldData) == currentAge ? 0x100 : 0);
+			if (value < worst) {
+				worst = value;
+				target = slot;
+			}
+		}
+		int offset = target * WORDS;
+		table[offset] = key ^ data ^ move;
+		table[offset + 1] = data;
+		table[offset + 2] = move;
+	}
+
+	/**
+	 * Looks up a position
+	 *
+	 * @param key the position hash
+	 * @param entry receives the entry if found; not null
+	 * @return whether the position was found
+	 */
+	public boolean probe(long key, Entry entry) {
+		int first = bucket(key);
+		for (int slot = first; slot < first + BUCKET; slot++) {
+			int offset = slot * WORDS;
+			long check = table[offset];
+			long data = table[offset + 1];
+			long move = table[offset + 2];
+			if (data != 0 && (check ^ data ^ move) == key) {
+				entry.depth = depthOf(data);
+				entry.bound = (int) ((data >>> 48) & 0x3);
+				entry.score = (int) data;
+				entry.move = move;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int bucket(long key) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	private static int depthOf(long data) {
+		return (int) ((data >>> 32) & 0xFF);
+	}
+
+	private static int ageOf(long data) {
+		return (int) ((data >>> 40) & 0xFF);
+	}
+
+	/**
+	 * A reusable holder for the result of {@link #probe(long, Entry)}
+	 */
+	public static final class Entry {
+		public int depth;
+		public int bound;
+		public int score;
+		public long move;
+	}
+
+}
@@ -44,7 +44,7 @@ public final class CodeGenRecorder {
 
 	public final void snap(ScotlandYardView view) {
 		seed = ImmutableScotlandYardView.snapshot(view);
-		if (!configs.keySet().equals(seed.players.stream().map(v -> v.colour).collect(toSet()))) {
+		if (!configs.keySet().equals(seed.players().stream().map(v -> v.colour).collect(toSet()))) {
 			throw new IllegalArgumentException("Not all created player(s) were added, created:" +
 					configs + " but game has " + configs);
 		}
@@ -39,7 +39,7 @@ public class GameModelSequencePUMLCodeGen implements CodeGen {
 	public void movePicked(ImmutableScotlandYardView seed,
 	                       ScotlandYardView view, int location, Set<Move> moves, Move picked) {
 
-		ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+		ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 
 		String current = named(now.getCurrentPlayer());
 
@@ -64,7 +64,7 @@ public class GameModelSequencePUMLCodeGen implements CodeGen {
 	@Override public Spectator mkSpectator(ImmutableScotlandYardView seed) {
 		return new Spectator() {
 			@Override public void onMoveMade(ScotlandYardView view, Move move) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				if (move.colour().isDetective() || move instanceof DoubleMove)
 					appendViewRNote(now, "");
 				interactions.add(format(
@@ -72,7 +72,7 @@ public class GameModelSequencePUMLCodeGen implements CodeGen {
 
 			}
 			@Override public void onRoundStarted(ScotlandYardView view, int round) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				if (previousPlayer(now).isMrX()) appendViewRNote(now, "");
 				interactions.add(format(
 						"ScotlandYardModel->Spectator: onRoundStarted(V, %d)", round));
@@ -83,9 +83,9 @@ public class GameModelSequencePUMLCodeGen implements CodeGen {
 				interactions.add("end");
 			}
 			@Override public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				interactions.add(format("ScotlandYardModel->Spectator: onGameOver(V, [%s])",
-						now.players.stream().map(v -> named(v.colour)).collect(joining(","))));
+						now.players().stream().map(v -> named(v.colour)).collect(joining(","))));
 				appendViewRNote(now, ", GameOver=true");
 				interactions.add("end");
 			}
@@ -115,7 +115,7 @@ public class GameModelSequencePUMLCodeGen implements CodeGen {
 				"\n" +
 				"skinparam monochrome true");
 		lines.add(format("title Sample game sequence(%d player, %d rounds)",
-				seed.players.size(), maxRound));
+				seed.players().size(), maxRound));
 		lines.add("legend right\n" +
 				"Type legend\n" +
 				"In package: uk.ac.bris.cs.scotlandyard.model\n" +
@@ -131,7 +131,7 @@ public class GameModelSequencePUMLCodeGen implements CodeGen {
 				"participant ScotlandYardModel <<(M, #BBBBBB) " +
 				"java.util.function.Consumer<Move> >>");
 		lines.add("box \"Players\" #LightBlue\n");
-		lines.add(seed.players.stream()
+		lines.add(seed.players().stream()
 				.map(v -> format("\tparticipant %s <<(P, #BBBBBB)>>", named(v.colour)))
 				.collect(joining("\n")));
 		lines.add("end box\n");
@@ -79,68 +79,110 @@ public final class ImmutableScotlandYardView implements ScotlandYardView {
 		}
 	}
 
+	private static final Ticket[] TICKETS = Ticket.values();
+
 	private final ImmutableList<Colour> colours;
 	private final ImmutableList<Boolean> rounds;
 	private final ImmutableGraph<Integer, Transport> graph;
 
-	final ImmutableList<ImmutablePlayer> players;
+	// player i is order[i] at locations[i], its tickets are at i * TICKETS.length
+	private final ImmutableList<Colour> order;
+	private final int[] locations;
+	private final int[] tickets;
 	final ImmutableSet<Colour> winning;
 	final boolean gameOver;
 	final Colour currentPlayer;
 	final int currentRound;
 
 	public static ImmutableScotlandYardView snapshot(ScotlandYardView view) {
-		return new ImmutableScotlandYardView(view);
+		Graph<Integer, Transport> graph = view.getGraph();
+		// an immutable graph cannot change under the snapshot, so it is not copied
+		return new ImmutableScotlandYardView(view, ImmutableList.copyOf(view.getPlayers()),
+				ImmutableList.copyOf(view.getRounds()),
+				graph instanceof ImmutableGraph ? (ImmutableGraph<Integer, Transport>) graph
+						: new ImmutableGraph<>(new UndirectedGraph<>(graph)));
+	}
+
+	/**
+	 * Snapshots a later state of the same game as a previous snapshot, the
+	 * graph, rounds and players are shared with it instead of being copied
+	 *
+	 * @param view the game; not null
+	 * @param previous a snapshot of the same game; not null
+	 * @return the snapshot; never null
+	 */
+	public static ImmutableScotlandYardView snapshot(ScotlandYardView view,
+			ImmutableScotlandYardView previous) {
+		List<Colour> colours = view.getPlayers();
+		return new ImmutableScotlandYardView(view,
+				previous.colours.equals(colours) ? previous.colours : ImmutableList.copyOf(colours),
+				previous.rounds, previous.graph);
 	}
 
 	private ImmutableScotlandYardView(
 			ImmutableList<Colour> colours,
 			ImmutableList<Boolean> rounds,
 			ImmutableGraph<Integer, Transport> graph,
-			ImmutableList<ImmutablePlayer> players,
+			ImmutableList<Colour> order, int[] locations, int[] tickets,
 			ImmutableSet<Colour> winning, boolean gameOver,
 			Colour currentPlayer, int currentRound) {
 		this.colours = colours;
 		this.rounds = rounds;
 		this.graph = graph;
-		this.players = players;
+		this.order = order;
+		this.locations = locations;
+		this.tickets = tickets;
 		this.winning = winning;
 		this.gameOver = gameOver;
 		this.currentPlayer = currentPlayer;
 		this.currentRound = currentRound;
 	}
-	private ImmutableScotlandYardView(ScotlandYardView view) {
-//		Thread.dumpStack();
-		players = view.getPlayers()
-				.stream()
-				.map(p -> {
-					Integer location = view.getPlayerLocation(p).orElseThrow(AssertionError::new);
-					ImmutableMap<Ticket, Integer> tickets = Stream.of(Ticket.values())
-							.collect(ImmutableMap.toImmutableMap(identity(), t -> view
-									.getPlayerTickets(p, t)
-									.orElseThrow(AssertionError::new)));
-					return new ImmutablePlayer(p, location, tickets);
-				}).collect(ImmutableList.toImmutableList());
-		colours = ImmutableList.copyOf(view.getPlayers());
+	private ImmutableScotlandYardView(ScotlandYardView view, ImmutableList<Colour> colours,
+			ImmutableList<Boolean> rounds, ImmutableGraph<Integer, Transport> graph) {
+		this.colours = colours;
+		this.rounds = rounds;
+		this.graph = graph;
+		order = colours;
+		locations = new int[colours.size()];
+		tickets = new int[colours.size() * TICKETS.length];
+		for (int i = 0; i < colours.size(); i++) {
+			Colour colour = colours.get(i);
+			locations[i] = view.getPlayerLocation(colour).orElseThrow(AssertionError::new);
+			for (Ticket ticket : TICKETS)
+				tickets[i * TICKETS.length + ticket.ordinal()] = view
+						.getPlayerTickets(colour, ticket)
+						.orElseThrow(AssertionError::new);
+		}
 		winning = ImmutableSet.copyOf(view.getWinningPlayers());
 		gameOver = view.isGameOver();
 		currentRound = view.getCurrentRound();
 		currentPlayer = view.getCurrentPlayer();
-		rounds = ImmutableList.copyOf((view.getRounds()));
-		graph = new ImmutableGraph<>(new UndirectedGraph<>(view.getGraph()));
+	}
+
+	/**
+	 * @return the players of the snapshot, created on every call; never null
+	 */
+	ImmutableList<ImmutablePlayer> players() {
+		ImmutableList.Builder<ImmutablePlayer> players = ImmutableList.builder();
+		for (int i = 0; i < order.size(); i++) {
+			ImmutableMap.Builder<Ticket, Integer> counts = ImmutableMap.builder();
+			for (Ticket ticket : TICKETS)
+				counts.put(ticket, tickets[i * TICKETS.length + ticket.ordinal()]);
+			players.add(new ImmutablePlayer(order.get(i), locations[i], counts.build()));
+		}
+		return players.build();
 	}
 
 	@Override public List<Colour> getPlayers() { return colours; }
 	@Override public Set<Colour> getWinningPlayers() { return winning; }
 	@Override public Optional<Integer> getPlayerLocation(Colour colour) {
-		return players.stream()
-				.filter(p -> p.colour == colour)
-				.map(p -> p.location).findFirst();
+		int i = order.indexOf(colour);
+		return i < 0 ? Optional.empty() : Optional.of(locations[i]);
 	}
 	@Override public Optional<Integer> getPlayerTickets(Colour colour, Ticket ticket) {
-		return players.stream()
-				.filter(p -> p.colour == colour)
-				.map(p -> p.tickets.get(ticket)).findFirst();
+		int i = order.indexOf(colour);
+		return i < 0 ? Optional.empty()
+				: Optional.of(tickets[i * TICKETS.length + ticket.ordinal()]);
 	}
 	@Override public boolean isGameOver() { return gameOver; }
 	@Override public Colour getCurrentPlayer() { return currentPlayer; }
@@ -150,16 +192,25 @@ public final class ImmutableScotlandYardView implements ScotlandYardView {
 
 
 	private void checkPlayer(Colour colour) {
-		if (players.stream().noneMatch(c -> c.colour == colour))
+		if (!order.contains(colour))
 			throw new IllegalArgumentException("Player " + colour +
-					" is not part of " + players);
+					" is not part of " + players());
 	}
 
 	public ImmutableScotlandYardView players(ImmutablePlayer... players) {
 		ImmutableList<ImmutablePlayer> mapped = ImmutableList.copyOf(players);
 		mapped.forEach(p -> checkPlayer(p.colour));
+		int[] locations = new int[players.length];
+		int[] tickets = new int[players.length * TICKETS.length];
+		for (int i = 0; i < players.length; i++) {
+			locations[i] = players[i].location;
+			for (Ticket ticket : TICKETS)
+				tickets[i * TICKETS.length + ticket.ordinal()] =
+						players[i].tickets.getOrDefault(ticket, 0);
+		}
 		return new ImmutableScotlandYardView(colours, rounds, graph,
-				mapped, winning, gameOver, currentPlayer, currentRound);
+				mapped.stream().map(p -> p.colour).collect(ImmutableList.toImmutableList()),
+				locations, tickets, winning, gameOver, currentPlayer, currentRound);
 	}
 	//	public ImmutableSet<Colour> winning() {
 //		return winning.stream().map(ColourAbbr::from)
@@ -174,22 +225,22 @@ public final class ImmutableScotlandYardView implements ScotlandYardView {
 			throw new IllegalArgumentException("Duplicate colours in " + Arrays.toString(winning));
 		cs.forEach(this::checkPlayer);
 		return new ImmutableScotlandYardView(this.colours, rounds, graph,
-				players, cs, gameOver, currentPlayer, currentRound);
+				order, locations, tickets, cs, gameOver, currentPlayer, currentRound);
 	}
 	public ImmutableScotlandYardView over(boolean over) {
 		return new ImmutableScotlandYardView(colours, rounds, graph,
-				players, winning, over, currentPlayer, currentRound);
+				order, locations, tickets, winning, over, currentPlayer, currentRound);
 	}
 	public ImmutableScotlandYardView current(Colour colour) {
 		checkPlayer(colour);
 		return new ImmutableScotlandYardView(colours, rounds, graph,
-				players, winning, gameOver, colour, currentRound);
+				order, locations, tickets, winning, gameOver, colour, currentRound);
 	}
 	public ImmutableScotlandYardView round(int round) {
 		if (round - 1 > rounds.size())
 			throw new IllegalArgumentException(round + " > total round of " + rounds.size());
 		return new ImmutableScotlandYardView(colours, rounds, graph,
-				players, winning, gameOver, currentPlayer, round);
+				order, locations, tickets, winning, gameOver, currentPlayer, round);
 	}
 
 	public enum TicketAbbr {
@@ -236,7 +287,8 @@ public final class ImmutableScotlandYardView implements ScotlandYardView {
 		ImmutableScotlandYardView that = (ImmutableScotlandYardView) o;
 		return gameOver == that.gameOver &&
 				currentRound == that.currentRound &&
-				Objects.equals(players, that.players) &&
+				Arrays.equals(locations, that.locations) &&
+				Arrays.equals(tickets, that.tickets) &&
 				Objects.equals(winning, that.winning) &&
 				currentPlayer == that.currentPlayer &&
 				Objects.equals(rounds, that.rounds) &&
@@ -245,7 +297,8 @@ public final class ImmutableScotlandYardView implements ScotlandYardView {
 
 	@Override
 	public int hashCode() {
-		return hash(players, winning, gameOver, currentPlayer, currentRound, rounds, graph);
+		return hash(Arrays.hashCode(locations), Arrays.hashCode(tickets), winning, gameOver,
+				currentPlayer, currentRound, rounds, graph);
 	}
 
 	@Override
@@ -256,6 +309,6 @@ public final class ImmutableScotlandYardView implements ScotlandYardView {
 				currentPlayer,
 				gameOver,
 				fixedOrder(winning),
-				players);
+				players());
 	}
 }
@@ -46,7 +46,7 @@ public class TestHarnessPlayOutTestCodeGen implements CodeGen {
 	@Override public void movePicked(ImmutableScotlandYardView seed,
 	                                 ScotlandYardView view, int location, Set<Move> moves,
 	                                 Move picked) {
-		ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+		ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 		interactions.add(format("player(%s).makeMove()" +
 						"\n\t.givenGameState(eq(%s))" +
 						"\n\t.givenLocation(eq(%d))" +
@@ -61,21 +61,21 @@ public class TestHarnessPlayOutTestCodeGen implements CodeGen {
 	@Override public Spectator mkSpectator(ImmutableScotlandYardView seed) {
 		return new Spectator() {
 			@Override public void onMoveMade(ScotlandYardView view, Move move) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				interactions.add(format("spectator().onMoveMade()" +
 								"\t\n.givenGameState(eq(%s))" +
 								"\t\n.givenMove(eq(%s))",
 						mkView(seedV, seed, now), mkMove(move)));
 			}
 			@Override public void onRoundStarted(ScotlandYardView view, int round) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				interactions.add(format("spectator().onRoundStarted()" +
 								"\t\n.givenGameState(eq(%s))" +
 								"\t\n.givenRound(eq(%d))",
 						mkView(seedV, seed, now), round));
 			}
 			@Override public void onRotationComplete(ScotlandYardView view) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				interactions.add(format("spectator().onRotationComplete()" +
 								"\t\n.givenGameState(eq(%s))" +
 								"\t\n.respondWith(startRotate(%s))",
@@ -83,7 +83,7 @@ public class TestHarnessPlayOutTestCodeGen implements CodeGen {
 			}
 			@Override
 			public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
-				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view);
+				ImmutableScotlandYardView now = ImmutableScotlandYardView.snapshot(view, seed);
 				interactions.add(format("spectator().onGameOver()" +
 								"\t\n.givenGameState(eq(%s))" +
 								"\t\n.givenWinners(eq(ImmutableSet.of(%s)))",
@@ -102,7 +102,7 @@ public class TestHarnessPlayOutTestCodeGen implements CodeGen {
 		List<String> ls = new ArrayList<>();
 		ls.add(format("TestHarness %s = new TestHarness();", harnessV));
 
-		List<ImmutablePlayer> players = seed.players.stream()
+		List<ImmutablePlayer> players = seed.players().stream()
 				.map(v -> new ImmutablePlayer(v.colour, configs.get(v.colour).location, v.tickets))
 				.collect(toList());
 
@@ -191,7 +191,7 @@ public class TestHarnessPlayOutTestCodeGen implements CodeGen {
 					.map(Colour::name)
 					.collect(joining(", "))));
 		delta.append(format(".players(\n\t//<editor-fold defaultstate=\"%s\"> \n", "collapsed"));
-		delta.append(now.players.stream()
+		delta.append(now.players().stream()
 				.map(TestHarnessPlayOutTestCodeGen::mkPlayer)
 				.collect(joining(", \n")));
 		delta.append(")\n\t//</editor-fold>\n");
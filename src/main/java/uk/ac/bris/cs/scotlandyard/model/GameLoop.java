@@ -0,0 +1,316 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+/**
+ * Drives a {@link ScotlandYardGame} by asking {@link PullPlayer}s for moves
+ * in a loop.
+ *
+ * The game itself calls {@link Player#makeMove} and, through the callback,
+ * the next player's {@code makeMove} from within the previous one, so a
+ * synchronous player nests every move of a rotation on the call stack. Here
+ * the game's players only record what is asked of them and return; the loop
+ * then gets the move from the {@link PullPlayer} and passes it to the
+ * recorded callback, so the stack stays the same depth however long the game
+ * is. Spectators are notified by the game exactly as they would be otherwise.
+ *
+ * With a move timeout, a player whose future has not completed in time has
+ * it cancelled and a fallback move is played for it, so no move takes much
+ * longer than the timeout.
+ *
+ * <pre>
+ * GameLoop loop = new GameLoop.Builder(rounds, graph)
+ * 		.player(BLACK, mrX, mrXTickets, 45)
+ * 		.player(BLUE, blue, detectiveTickets, 26)
+ * 		.build();
+ * loop.game().registerSpectator(spectator);
+ * Set&lt;Colour&gt; winners = loop.run();
+ * </pre>
+ */
+public final class GameLoop {
+
+	private final ScotlandYardGame game;
+	private final Map<Colour, PullPlayer> players;
+	private final List<Colour> colours;
+	private final Duration moveTimeout;
+	private final Function<Set<Move>, Move> fallback;
+	private Request pending;
+	private Colour stuck;
+	private int timeouts;
+
+	private GameLoop(Builder builder) {
+		this.players = new EnumMap<>(builder.players);
+		this.colours = new ArrayList<>(builder.colours);
+		this.moveTimeout = builder.moveTimeout;
+		this.fallback = builder.fallback;
+		if (colours.size() < 2) throw new IllegalArgumentException("No detectives");
+		PlayerConfiguration[] configurations = new PlayerConfiguration[colours.size()];
+		for (int i = 0; i < configurations.length; i++) {
+			Colour colour = colours.get(i);
+			configurations[i] = new PlayerConfiguration.Builder(colour)
+					.using(new Seat(colour))
+					.with(builder.tickets.get(colour))
+					.at(builder.locations.get(colour))
+					.build();
+		}
+		PlayerConfiguration[] rest = new PlayerConfiguration[configurations.length - 2];
+		System.arraycopy(configurations, 2, rest, 0, rest.length);
+		this.game = builder.gameFactory.createGame(builder.rounds, builder.graph,
+				configurations[0], configurations[1], rest);
+	}
+
+	/**
+	 * @return the game, to register spectators on before the first
+	 *         {@link #step()}; never null
+	 */
+	public ScotlandYardGame game() {
+		return game;
+	}
+
+	/**
+	 * Makes moves until the game is over
+	 *
+	 * @return the winning players, see {@link #winningPlayers()}; never null
+	 */
+	public Set<Colour> run() {
+		while (step()) continue;
+		return winningPlayers();
+	}
+
+	/**
+	 * Asks the current player for one move and plays it, starting a new
+	 * rotation first if needed. Waits for the player's future to complete,
+	 * or until the move timeout if there is one.
+	 *
+	 * @return false if the game was already over, or could not continue
+	 *         because Mr.X was handed no moves at the start of a rotation
+	 * @throws CompletionException if the player's future completed
+	 *         exceptionally
+	 * @throws CancellationException if the thread was interrupted while
+	 *         waiting, the player's future is cancelled as well
+	 */
+	public boolean step() {
+		if (isOver()) return false;
+		if (pending == null) game.startRotate();
+		Request request = pending;
+		if (request == null) throw new IllegalStateException("The game did not ask for a move");
+		pending = null;
+		if (request.moves.isEmpty()) {
+			stuck = request.colour;
+			return false;
+		}
+		Move move = await(players.get(request.colour)
+				.chooseMove(request.view, request.location, request.moves), request.moves);
+		request.callback.accept(requireNonNull(move, "Move cannot be null"));
+		return true;
+	}
+
+	private Move await(CompletableFuture<Move> future, Set<Move> moves) {
+		if (moveTimeout == null) return future.join();
+		try {
+			return future.get(moveTimeout.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// the move may still have arrived before the cancellation
+			if (!future.cancel(true)) return future.join();
+			timeouts++;
+			return fallback.apply(moves);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for a move");
+		} catch (ExecutionException e) {
+			throw new CompletionException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of moves that timed out and were replaced by a
+	 *         fallback move
+	 */
+	public int timeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * @return whether the game is over or cannot continue
+	 */
+	public boolean isOver() {
+		return stuck != null || game.isGameOver();
+	}
+
+	/**
+	 * @return the player that was handed no moves and so could not move, the
+	 *         game does not end by itself in that case
+	 */
+	public Optional<Colour> stuckPlayer() {
+		return Optional.ofNullable(stuck);
+	}
+
+	/**
+	 * @return the winners of the game; if a player could not move, the
+	 *         other side; never null
+	 */
+	public Set<Colour> winningPlayers() {
+		if (stuck == null) return game.getWinningPlayers();
+		if (stuck.isDetective()) return Collections.singleton(Colour.BLACK);
+		return Collections.unmodifiableSet(new HashSet<>(colours.subList(1, colours.size())));
+	}
+
+	private static final class Request {
+		final Colour colour;
+		final ScotlandYardView view;
+		final int location;
+		final Set<Move> moves;
+		final Consumer<Move> callback;
+
+		Request(Colour colour, ScotlandYardView view, int location, Set<Move> moves,
+				Consumer<Move> callback) {
+			this.colour = colour;
+			this.view = view;
+			this.location = location;
+			this.moves = moves;
+			this.callback = callback;
+		}
+	}
+
+	// the player the game sees, it only records the request for the loop
+	private final class Seat implements Player {
+
+		private final Colour colour;
+
+		Seat(Colour colour) {
+			this.colour = colour;
+		}
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves,
+				Consumer<Move> callback) {
+			if (pending != null) throw new IllegalStateException("A move is already pending");
+			pending = new Request(colour, view, location, moves, callback);
+		}
+	}
+
+	/**
+	 * Builds a {@link GameLoop}. Mr.X must be added first, detectives move in
+	 * the order they are added.
+	 */
+	public static class Builder {
+
+		private final List<Boolean> rounds;
+		private final Graph<Integer, Transport> graph;
+		private final List<Colour> colours = new ArrayList<>();
+		private final Map<Colour, PullPlayer> players = new EnumMap<>(Colour.class);
+		private final Map<Colour, Map<Ticket, Integer>> tickets = new EnumMap<>(Colour.class);
+		private final Map<Colour, Integer> locations = new EnumMap<>(Colour.class);
+		private ScotlandYardGameFactory gameFactory = new ModelFactories.ImperativeModelFactory();
+		private Duration moveTimeout;
+		private Function<Set<Move>, Move> fallback;
+
+		/**
+		 * @param rounds see {@link ScotlandYardGameFactory#createGame}; not null
+		 * @param graph the map; not null
+		 */
+		public Builder(List<Boolean> rounds, Graph<Integer, Transport> graph) {
+			this.rounds = requireNonNull(rounds);
+			this.graph = requireNonNull(graph);
+		}
+
+		/**
+		 * @param gameFactory creates the game, defaults to
+		 *        {@link ModelFactories.ImperativeModelFactory}; not null
+		 * @return the builder for chaining; never null
+		 */
+		public Builder gameFactory(ScotlandYardGameFactory gameFactory) {
+			this.gameFactory = requireNonNull(gameFactory);
+			return this;
+		}
+
+		/**
+		 * Same as {@link #moveTimeout(Duration, Function)} with the first
+		 * of the valid moves as the fallback
+		 *
+		 * @param timeout the time each player has for a move; not null
+		 * @return the builder for chaining; never null
+		 */
+		public Builder moveTimeout(Duration timeout) {
+			return moveTimeout(timeout, moves -> moves.iterator().next());
+		}
+
+		/**
+		 * Limits the time players have for a move
+		 *
+		 * @param timeout the time each player has for a move; positive
+		 * @param fallback picks the move to play when a player times out from
+		 *        its valid moves; not null
+		 * @return the builder for chaining; never null
+		 */
+		public Builder moveTimeout(Duration timeout, Function<Set<Move>, Move> fallback) {
+			if (timeout.isNegative() || timeout.isZero())
+				throw new IllegalArgumentException("timeout must be positive");
+			this.moveTimeout = timeout;
+			this.fallback = requireNonNull(fallback);
+			return this;
+		}
+
+		/**
+		 * Adds a player
+		 *
+		 * @param colour the colour; not null
+		 * @param player the player; not null
+		 * @param tickets the tickets; not null
+		 * @param location the starting location
+		 * @return the builder for chaining; never null
+		 */
+		public Builder player(Colour colour, PullPlayer player, Map<Ticket, Integer> tickets,
+				int location) {
+			requireNonNull(colour);
+			if (players.containsKey(colour)) throw new IllegalArgumentException("Duplicate colour");
+			colours.add(colour);
+			players.put(colour, requireNonNull(player));
+			this.tickets.put(colour, requireNonNull(tickets));
+			locations.put(colour, location);
+			return this;
+		}
+
+		/**
+		 * Adds a player from a configuration, its {@link Player} is asked
+		 * through {@link PullPlayer#fromPlayer(Player)}
+		 *
+		 * @param configuration the configuration; not null
+		 * @return the builder for chaining; never null
+		 */
+		public Builder player(PlayerConfiguration configuration) {
+			return player(configuration.colour, PullPlayer.fromPlayer(configuration.player),
+					configuration.tickets, configuration.location);
+		}
+
+		/**
+		 * @return the loop with a new game; never null
+		 * @throws IllegalArgumentException if the game rejects the players
+		 */
+		public GameLoop build() {
+			return new GameLoop(this);
+		}
+	}
+
+}
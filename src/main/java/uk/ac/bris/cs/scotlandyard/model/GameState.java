@@ -0,0 +1,507 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+/**
+ * A compact mutable game state for game tree search. Moves are applied with
+ * {@link #apply(long)} and rolled back with {@link #undo()} so a search can
+ * walk the tree without copying the state at every node.
+ *
+ * The rules are the same as the ones of {@link ScotlandYardModel#accept(Move)}:
+ * detectives hand their used tickets to Mr.X, double moves use up two rounds,
+ * {@link #mrXLastLocation()} follows the reveal rounds and the game over
+ * conditions are checked the same way, including Mr.X being stuck or the
+ * rounds running out only counting once all detectives have moved.
+ *
+ * Moves are encoded with {@link PackedMove} and generated with a
+ * {@link MoveGenerator}. Player 0 is always Mr.X, followed by the detectives
+ * in play order. {@link #hash()} is a {@link Zobrist} hash kept up to date
+ * by apply and undo. Apart from growing the undo history, no method allocates
+ * except {@link #winningPlayers()}. Not thread safe, use {@link #copy()} to
+ * hand a state to another thread.
+ */
+public final class GameState {
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final int LOCATION_BITS = 26;
+	private static final long LOCATION_MASK = PackedMove.MAX_DESTINATION;
+
+	private final NeighbourIndex neighbours;
+	private final MoveGenerator generator;
+	private final boolean[] reveals;
+	private final Colour[] colours;
+	private final int[] locations;
+	private final int[][] tickets;
+	private final NodeSet detectives;
+	private int round;
+	private int current;
+	private int mrXLastLocation;
+	private boolean rotationComplete;
+	private long hash;
+
+	private long[] history = new long[64];
+	private long[] undoInfo = new long[64];
+	private long[] hashes = new long[64];
+	private int depth;
+
+	private GameState(NeighbourIndex neighbours, boolean[] reveals, Colour[] colours) {
+		this.neighbours = neighbours;
+		this.generator = new MoveGenerator(neighbours);
+		this.reveals = reveals;
+		this.colours = colours;
+		this.locations = new int[colours.length];
+		this.tickets = new int[colours.length][TICKETS.length];
+		this.detectives = NodeSet.of(neighbours);
+	}
+
+	/**
+	 * Creates the state of a new game, arguments are the same as the ones of
+	 * {@link ScotlandYardModel}
+	 *
+	 * @return the state before Mr.X's first move; never null
+	 */
+	public static GameState of(List<Boolean> rounds, Graph<Integer, Transport> graph,
+			PlayerConfiguration mrX, PlayerConfiguration firstDetective,
+			PlayerConfiguration... restOfTheDetectives) {
+		List<PlayerConfiguration> configurations = new ArrayList<>();
+		configurations.add(Objects.requireNonNull(mrX));
+		configurations.add(Objects.requireNonNull(firstDetective));
+		for (PlayerConfiguration configuration : restOfTheDetectives)
+			configurations.add(Objects.requireNonNull(configuration));
+		if (mrX.colour != BLACK) throw new IllegalArgumentException("MrX should be Black");
+
+		Colour[] colours = new Colour[configurations.size()];
+		for (int i = 0; i < colours.length; i++) colours[i] = configurations.get(i).colour;
+		GameState state = new GameState(NeighbourIndex.of(Objects.requireNonNull(graph)),
+				reveals(Objects.requireNonNull(rounds)), colours);
+		for (int i = 0; i < colours.length; i++) {
+			PlayerConfiguration configuration = configurations.get(i);
+			for (Ticket ticket : TICKETS)
+				state.tickets[i][ticket.ordinal()] = configuration.tickets.getOrDefault(ticket, 0);
+			state.place(i, configuration.location);
+		}
+		state.hash = state.computeHash();
+		return state;
+	}
+
+	/**
+	 * Creates a state from what a player sees during
+	 * {@link Player#makeMove(ScotlandYardView, int, java.util.Set, java.util.function.Consumer)}
+	 *
+	 * @param view the view of the game; not null
+	 * @param mrXLocation where Mr.X is, or is assumed to be for detectives
+	 * @return the state; never null
+	 */
+	public static GameState fromView(ScotlandYardView view, int mrXLocation) {
+		return fromView(view, NeighbourIndex.of(view.getGraph()), mrXLocation);
+	}
+
+	/**
+	 * Same as {@link #fromView(ScotlandYardView, int)} reusing an existing
+	 * index of the map
+	 *
+	 * @param view the view of the game; not null
+	 * @param neighbours the index of the map of the game; not null
+	 * @param mrXLocation where Mr.X is, or is assumed to be for detectives
+	 * @return the state; never null
+	 */
+	public static GameState fromView(ScotlandYardView view, NeighbourIndex neighbours,
+			int mrXLocation) {
+		List<Colour> players = view.getPlayers();
+		Colour[] colours = players.toArray(new Colour[0]);
+		if (colours.length == 0 || colours[0] != BLACK)
+			throw new IllegalArgumentException("MrX should be the first player");
+		GameState state = new GameState(Objects.requireNonNull(neighbours),
+				reveals(view.getRounds()), colours);
+		for (int i = 0; i < colours.length; i++) {
+			for (Ticket ticket : TICKETS)
+				state.tickets[i][ticket.ordinal()] =
+						view.getPlayerTickets(colours[i], ticket).orElse(0);
+			state.place(i, i == 0 ? mrXLocation : view.getPlayerLocation(colours[i]).orElse(0));
+		}
+		state.round = view.getCurrentRound();
+		state.current = players.indexOf(view.getCurrentPlayer());
+		state.mrXLastLocation = view.getPlayerLocation(BLACK).orElse(0);
+		state.hash = state.computeHash();
+		return state;
+	}
+
+	/**
+	 * @return a copy of this state without the undo history; never null
+	 */
+	public GameState copy() {
+		GameState copy = new GameState(neighbours, reveals, colours);
+		for (int i = 0; i < colours.length; i++) {
+			copy.locations[i] = locations[i];
+			System.arraycopy(tickets[i], 0, copy.tickets[i], 0, TICKETS.length);
+		}
+		copy.detectives.copyFrom(detectives);
+		copy.round = round;
+		copy.current = current;
+		copy.mrXLastLocation = mrXLastLocation;
+		copy.rotationComplete = rotationComplete;
+		copy.hash = hash;
+		return copy;
+	}
+
+	private static boolean[] reveals(List<Boolean> rounds) {
+		boolean[] reveals = new boolean[rounds.size()];
+		for (int i = 0; i < reveals.length; i++) reveals[i] = rounds.get(i);
+		return reveals;
+	}
+
+	private void place(int player, int location) {
+		if (neighbours.indexOf(location) < 0)
+			throw new IllegalArgumentException(location + " is not on the map");
+		locations[player] = location;
+		if (player != 0) {
+			int index = neighbours.indexOf(location);
+			if (detectives.contains(index)) throw new IllegalArgumentException("Duplicate location");
+			detectives.add(index);
+		}
+	}
+
+	/**
+	 * @return the index of the map; never null
+	 */
+	public NeighbourIndex neighbours() {
+		return neighbours;
+	}
+
+	/**
+	 * @return the number of players, including Mr.X
+	 */
+	public int playerCount() {
+		return colours.length;
+	}
+
+	/**
+	 * @param player the player index, 0 for Mr.X
+	 * @return the colour of the player; never null
+	 */
+	public Colour colour(int player) {
+		return colours[player];
+	}
+
+	/**
+	 * @param player the player index, 0 for Mr.X
+	 * @return the actual location of the player
+	 */
+	public int location(int player) {
+		return locations[player];
+	}
+
+	/**
+	 * @param player the player index, 0 for Mr.X
+	 * @param ticket the ticket; not null
+	 * @return the number of the given tickets the player holds
+	 */
+	public int tickets(int player, Ticket ticket) {
+		return tickets[player][ticket.ordinal()];
+	}
+
+	/**
+	 * @return node indices occupied by detectives, must not be modified;
+	 *         never null
+	 */
+	public NodeSet detectives() {
+		return detectives;
+	}
+
+	/**
+	 * @return the location of Mr.X as the detectives know it, 0 if he has not
+	 *         been revealed yet
+	 */
+	public int mrXLastLocation() {
+		return mrXLastLocation;
+	}
+
+	/**
+	 * @return the current round, see {@link ScotlandYardView#getCurrentRound()}
+	 */
+	public int round() {
+		return round;
+	}
+
+	/**
+	 * @return the number of rounds in the game
+	 */
+	public int rounds() {
+		return reveals.length;
+	}
+
+	/**
+	 * @return the index of the player to move, 0 for Mr.X
+	 */
+	public int currentPlayer() {
+		return current;
+	}
+
+	/**
+	 * @return the colour of the player to move; never null
+	 */
+	public Colour currentColour() {
+		return colours[current];
+	}
+
+	/**
+	 * @return the {@link Zobrist} hash of this state; equal to
+	 *         {@link ScotlandYardModel#getZobristHash()} for the same position
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	/**
+	 * @return the {@link Zobrist} hash computed from scratch, always equal to
+	 *         {@link #hash()}
+	 */
+	public long computeHash() {
+		long hash = Zobrist.round(round) ^ Zobrist.toMove(colours[current].ordinal());
+		for (int i = 0; i < colours.length; i++) {
+			int colour = colours[i].ordinal();
+			hash ^= Zobrist.location(colour, locations[i]);
+			for (int ticket = 0; ticket < TICKETS.length; ticket++)
+				hash ^= Zobrist.tickets(colour, ticket, tickets[i][ticket]);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the number of moves that can be undone
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * @return a buffer length that is always large enough for
+	 *         {@link #validMoves(long[])}
+	 */
+	public int maxMoves() {
+		return generator.maxMoves();
+	}
+
+	/**
+	 * Generates the moves of the current player, the same ones the model would
+	 * hand to {@link Player#makeMove}
+	 *
+	 * @param out receives the moves, see {@link #maxMoves()}; not null
+	 * @return the number of moves written
+	 */
+	public int validMoves(long[] out) {
+		if (current == 0)
+			return generator.mrXMoves(locations[0], tickets[0], detectives,
+					round >= reveals.length - 1, out);
+		return generator.detectiveMoves(colours[current], locations[current], tickets[current],
+				detectives, out);
+	}
+
+	/**
+	 * @param move the move; not null
+	 * @return whether the move is one of {@link #validMoves(long[])}
+	 */
+	public boolean isValid(Move move) {
+		long packed = PackedMove.fromMove(move);
+		long[] moves = new long[maxMoves()];
+		int count = validMoves(moves);
+		for (int i = 0; i < count; i++) if (moves[i] == packed) return true;
+		return false;
+	}
+
+	/**
+	 * Applies a move after checking that it is valid
+	 *
+	 * @param move the move; not null
+	 * @throws IllegalArgumentException if the move is not valid
+	 */
+	public void apply(Move move) {
+		if (!isValid(Objects.requireNonNull(move)))
+			throw new IllegalArgumentException("Move is not valid");
+		apply(PackedMove.fromMove(move));
+	}
+
+	/**
+	 * Applies a move of the current player. The move is expected to come from
+	 * {@link #validMoves(long[])}, only its colour is checked.
+	 *
+	 * @param move the encoded move
+	 */
+	public void apply(long move) {
+		if (PackedMove.colour(move) != colours[current])
+			throw new IllegalArgumentException("Not the move of " + colours[current]);
+		if (depth == history.length) {
+			history = Arrays.copyOf(history, depth * 2);
+			undoInfo = Arrays.copyOf(undoInfo, depth * 2);
+			hashes = Arrays.copyOf(hashes, depth * 2);
+		}
+		hashes[depth] = hash;
+		history[depth] = move;
+		undoInfo[depth++] = locations[current]
+				| ((long) mrXLastLocation << LOCATION_BITS)
+				| (rotationComplete ? 1L << (2 * LOCATION_BITS) : 0);
+
+		int kind = PackedMove.kind(move);
+		if (current == 0) {
+			int ticket = (int) ((move >>> 5) & 0x7);
+			int destination = PackedMove.destination(move);
+			if (kind == PackedMove.DOUBLE) {
+				int secondDestination = PackedMove.secondDestination(move);
+				adjustTickets(0, DOUBLE, -1);
+				adjustTickets(0, ticket, -1);
+				adjustTickets(0, (int) ((move >>> 8) & 0x7), -1);
+				if (reveals[round + 1]) mrXLastLocation = secondDestination;
+				else if (reveals[round]) mrXLastLocation = destination;
+				setRound(round + 2);
+				setLocation(0, secondDestination);
+			} else if (kind == PackedMove.TICKET) {
+				adjustTickets(0, ticket, -1);
+				if (reveals[round]) mrXLastLocation = destination;
+				setRound(round + 1);
+				setLocation(0, destination);
+			}
+		} else if (kind == PackedMove.TICKET) {
+			int ticket = (int) ((move >>> 5) & 0x7);
+			int destination = PackedMove.destination(move);
+			adjustTickets(current, ticket, -1);
+			adjustTickets(0, ticket, 1);
+			detectives.remove(neighbours.indexOf(locations[current]));
+			detectives.add(neighbours.indexOf(destination));
+			setLocation(current, destination);
+		}
+		hash ^= Zobrist.toMove(colours[current].ordinal());
+		current = (current + 1) % colours.length;
+		hash ^= Zobrist.toMove(colours[current].ordinal());
+		rotationComplete = current == 0;
+	}
+
+	private void adjustTickets(int player, int ticket, int by) {
+		int colour = colours[player].ordinal();
+		int count = tickets[player][ticket];
+		hash ^= Zobrist.tickets(colour, ticket, count) ^ Zobrist.tickets(colour, ticket, count + by);
+		tickets[player][ticket] = count + by;
+	}
+
+	private void setLocation(int player, int location) {
+		int colour = colours[player].ordinal();
+		hash ^= Zobrist.location(colour, locations[player]) ^ Zobrist.location(colour, location);
+		locations[player] = location;
+	}
+
+	private void setRound(int round) {
+		hash ^= Zobrist.round(this.round) ^ Zobrist.round(round);
+		this.round = round;
+	}
+
+	/**
+	 * Rolls back the last applied move
+	 *
+	 * @throws IllegalStateException if there is nothing to undo
+	 */
+	public void undo() {
+		if (depth == 0) throw new IllegalStateException("Nothing to undo");
+		long move = history[--depth];
+		long info = undoInfo[depth];
+		hash = hashes[depth];
+		current = (current + colours.length - 1) % colours.length;
+		rotationComplete = (info >>> (2 * LOCATION_BITS)) != 0;
+		mrXLastLocation = (int) ((info >>> LOCATION_BITS) & LOCATION_MASK);
+		int previous = (int) (info & LOCATION_MASK);
+
+		int kind = PackedMove.kind(move);
+		int[] held = tickets[current];
+		int ticket = (int) ((move >>> 5) & 0x7);
+		if (current == 0) {
+			if (kind == PackedMove.DOUBLE) {
+				held[DOUBLE]++;
+				held[ticket]++;
+				held[(int) ((move >>> 8) & 0x7)]++;
+				round -= 2;
+			} else if (kind == PackedMove.TICKET) {
+				held[ticket]++;
+				round--;
+			}
+		} else if (kind == PackedMove.TICKET) {
+			held[ticket]++;
+			tickets[0][ticket]--;
+			detectives.remove(neighbours.indexOf(locations[current]));
+			detectives.add(neighbours.indexOf(previous));
+		}
+		locations[current] = previous;
+	}
+
+	/**
+	 * @return whether the game is over, see {@link ScotlandYardGame#isGameOver()}
+	 */
+	public boolean isGameOver() {
+		return mrXWins() || detectivesWin();
+	}
+
+	/**
+	 * @return whether Mr.X is among the winners: the rounds ran out or no
+	 *         detective can move
+	 */
+	public boolean mrXWins() {
+		if (rotationComplete && round >= reveals.length) return true;
+		for (int i = 1; i < colours.length; i++) if (canMove(i)) return false;
+		return true;
+	}
+
+	/**
+	 * @return whether the detectives are among the winners: Mr.X was caught
+	 *         or cannot move
+	 */
+	public boolean detectivesWin() {
+		if (detectives.contains(neighbours.indexOf(locations[0]))) return true;
+		return rotationComplete && !canMove(0);
+	}
+
+	/**
+	 * @return the winning players, see
+	 *         {@link ScotlandYardGame#getWinningPlayers()}; never null
+	 */
+	public Set<Colour> winningPlayers() {
+		Set<Colour> winners = new HashSet<>();
+		if (mrXWins()) winners.add(BLACK);
+		if (detectivesWin())
+			for (int i = 1; i < colours.length; i++) winners.add(colours[i]);
+		return Collections.unmodifiableSet(winners);
+	}
+
+	// whether the player has a move other than a pass move
+	private boolean canMove(int player) {
+		int[] held = tickets[player];
+		int node = neighbours.indexOf(locations[player]);
+		boolean secret = player == 0 && held[SECRET] > 0;
+		for (Transport transport : TRANSPORTS) {
+			if (!secret && held[Ticket.fromTransport(transport).ordinal()] == 0) continue;
+			for (int n = neighbours.start(node, transport); n < neighbours.end(node, transport); n++)
+				if (!detectives.contains(neighbours.target(n))) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("GameState{round=").append(round)
+				.append(", current=").append(colours[current]);
+		for (int i = 0; i < colours.length; i++) {
+			sb.append(", ").append(colours[i]).append('@').append(locations[i]);
+			sb.append(Arrays.toString(tickets[i]));
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.GraphFile;
+
+/**
+ * Compiles a map in the text format of {@link ScotlandYardGraphReader} and
+ * its position file into a {@link GraphFile}, which loads in a fraction of
+ * the time. Load the graph back with
+ * {@link ScotlandYardGraphReader#fromFile(Path)}, or use
+ * {@link GraphFile#read(Path, Class)} for the positions and distances too.
+ */
+public final class MapCompiler {
+
+	private MapCompiler() {
+		// nope
+	}
+
+	/**
+	 * Compiles a map
+	 *
+	 * @param graphLines the lines of the graph, see
+	 *        {@link ScotlandYardGraphReader#fromLines(List)}; not null
+	 * @param positionLines the lines of the position file, see
+	 *        {@link ScotlandYardGraphReader#positionsFromLines(List)}; not
+	 *        null, empty for none
+	 * @param output the compiled map, replaced if it exists; not null
+	 * @param distances whether to store the distances between all nodes using
+	 *        every transport, which takes nodes * nodes bytes
+	 * @throws IOException if the compiled map cannot be written
+	 * @throws IllegalArgumentException if the lines are not a valid map
+	 */
+	public static void compile(List<String> graphLines, List<String> positionLines, Path output,
+			boolean distances) throws IOException {
+		CompactGraph<Transport> graph = CompactGraph
+				.copyOf(ScotlandYardGraphReader.fromLines(graphLines), Transport.class);
+		GraphFile.write(output, graph, ScotlandYardGraphReader.positionsFromLines(positionLines),
+				distances ? EnumSet.allOf(Transport.class) : null);
+	}
+
+	/**
+	 * Compiles a map from the command line:
+	 * {@code <graph.txt> <pos.txt> <output> [--distances]}
+	 *
+	 * @param args the arguments
+	 * @throws IOException if the map cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3 || (args.length > 3 && !args[3].equals("--distances"))) {
+			System.err.println("Usage: MapCompiler <graph.txt> <pos.txt> <output> [--distances]");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		compile(Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8),
+				Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8),
+				Paths.get(args[2]), args.length > 3);
+		System.out.printf("Compiled %s (%d bytes) in %.1fs%n", args[2],
+				Files.size(Paths.get(args[2])), (System.nanoTime() - start) / 1e9);
+	}
+
+}
@@ -0,0 +1,331 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
+
+/**
+ * Generates city-like maps of any size for scaling tests, in the text format
+ * of {@link ScotlandYardGraphReader} and its position file.
+ *
+ * Nodes sit on a jittered square grid and are numbered from 1 row by row.
+ * The transports are layered the way the standard map is:
+ * <ul>
+ * <li>taxis connect grid neighbours, a random spanning tree keeps every node
+ * reachable and most other neighbours are connected too</li>
+ * <li>buses run along every other row and column, stopping every two or
+ * three nodes</li>
+ * <li>the underground runs along every fifth row and column, stopping every
+ * four to six nodes</li>
+ * <li>a few ferries connect distant nodes on the edge of the map</li>
+ * </ul>
+ * which gives roughly the standard map's mix of about 1.7 taxi, 0.3 bus and
+ * 0.08 underground edges per node. The same node count and seed always give
+ * the same map:
+ *
+ * <pre>
+ * MapGenerator map = new MapGenerator.Builder(100_000).seed(42).build();
+ * map.write(Paths.get("graph.txt"), Paths.get("pos.txt"));
+ * </pre>
+ *
+ * Lines are created as they are read, so even a map of millions of nodes is
+ * written without holding its text in memory.
+ */
+public final class MapGenerator {
+
+	/**
+	 * The largest map that can be generated
+	 */
+	public static final int MAX_NODES = 10_000_000;
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final double TAXI_DENSITY = 0.7;
+	private static final int BUS_LINE_SPACING = 2;
+	private static final int UNDERGROUND_LINE_SPACING = 5;
+	private static final int SPACING = 40;
+
+	private final int nodes;
+	private final int[] xs;
+	private final int[] ys;
+	private int[] sources = new int[16];
+	private int[] targets = new int[16];
+	private byte[] transports = new byte[16];
+	private int edgeCount;
+
+	private MapGenerator(int nodes, long seed) {
+		this.nodes = nodes;
+		this.xs = new int[nodes];
+		this.ys = new int[nodes];
+		Random random = new Random(seed);
+		int side = (int) Math.ceil(Math.sqrt(nodes));
+		for (int i = 0; i < nodes; i++) {
+			xs[i] = SPACING + (i % side) * SPACING + random.nextInt(SPACING / 2) - SPACING / 4;
+			ys[i] = SPACING + (i / side) * SPACING + random.nextInt(SPACING / 2) - SPACING / 4;
+		}
+		taxis(random, side);
+		lines(random, side, Transport.BUS, BUS_LINE_SPACING, 2);
+		lines(random, side, Transport.UNDERGROUND, UNDERGROUND_LINE_SPACING, 4);
+		ferries(random, side);
+	}
+
+	// a random spanning tree of the grid (Kruskal's over shuffled candidate
+	// edges), then most of the remaining neighbours
+	private void taxis(Random random, int side) {
+		int[] candidates = new int[2 * nodes];
+		int count = 0;
+		for (int i = 0; i < nodes; i++) {
+			if (i % side != side - 1 && i + 1 < nodes) candidates[count++] = 2 * i;
+			if (i + side < nodes) candidates[count++] = 2 * i + 1;
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = candidates[i];
+			candidates[i] = candidates[j];
+			candidates[j] = swap;
+		}
+		int[] parents = new int[nodes];
+		Arrays.setAll(parents, i -> i);
+		for (int c = 0; c < count; c++) {
+			int source = candidates[c] / 2;
+			int target = candidates[c] % 2 == 0 ? source + 1 : source + side;
+			int a = root(parents, source), b = root(parents, target);
+			if (a != b) parents[a] = b;
+			else if (random.nextDouble() >= TAXI_DENSITY) continue;
+			add(source, target, Transport.TAXI);
+		}
+	}
+
+	private static int root(int[] parents, int node) {
+		while (parents[node] != node) node = parents[node] = parents[parents[node]];
+		return node;
+	}
+
+	// straight lines along every nth row and column with stops at random
+	// gaps of minGap to minGap + 2 nodes
+	private void lines(Random random, int side, Transport transport, int spacing, int minGap) {
+		int rows = (nodes + side - 1) / side;
+		for (int row = random.nextInt(spacing); row < rows; row += spacing) {
+			int previous = -1;
+			for (int col = random.nextInt(minGap); col < side; col += minGap + random.nextInt(3)) {
+				int stop = row * side + col;
+				if (stop >= nodes) break;
+				if (previous >= 0) add(previous, stop, transport);
+				previous = stop;
+			}
+		}
+		for (int col = random.nextInt(spacing); col < side; col += spacing) {
+			int previous = -1;
+			for (int row = random.nextInt(minGap); row < rows; row += minGap + random.nextInt(3)) {
+				int stop = row * side + col;
+				if (stop >= nodes) break;
+				if (previous >= 0) add(previous, stop, transport);
+				previous = stop;
+			}
+		}
+	}
+
+	// connects nodes on the edge of the map that are at least half a side apart
+	private void ferries(Random random, int side) {
+		int[] shore = new int[nodes];
+		int count = 0;
+		for (int i = 0; i < nodes; i++) {
+			int col = i % side;
+			if (i < side || i + side >= nodes || col == 0 || col == side - 1) shore[count++] = i;
+		}
+		int ferries = Math.max(1, side / 5);
+		Set<Long> connected = new HashSet<>();
+		for (int attempt = 0; attempt < ferries * 10 && connected.size() < ferries; attempt++) {
+			int a = shore[random.nextInt(count)], b = shore[random.nextInt(count)];
+			int apart = Math.abs(a % side - b % side) + Math.abs(a / side - b / side);
+			if (apart < side / 2 || a == b) continue;
+			if (connected.add((long) Math.min(a, b) * nodes + Math.max(a, b)))
+				add(a, b, Transport.FERRY);
+		}
+	}
+
+	private void add(int source, int target, Transport transport) {
+		if (edgeCount == sources.length) {
+			sources = Arrays.copyOf(sources, edgeCount * 2);
+			targets = Arrays.copyOf(targets, edgeCount * 2);
+			transports = Arrays.copyOf(transports, edgeCount * 2);
+		}
+		sources[edgeCount] = source;
+		targets[edgeCount] = target;
+		transports[edgeCount] = (byte) transport.ordinal();
+		edgeCount++;
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int nodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * @return the number of undirected edges, as written to the graph file
+	 */
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @param transport the transport; not null
+	 * @return the number of undirected edges of the given transport
+	 */
+	public int edgeCount(Transport transport) {
+		int count = 0;
+		for (int e = 0; e < edgeCount; e++) if (transports[e] == transport.ordinal()) count++;
+		return count;
+	}
+
+	/**
+	 * Builds the map without going through its text, equal to reading
+	 * {@link #graphLines()} with {@link ScotlandYardGraphReader#fromLines(List)}
+	 *
+	 * @return the map; never null
+	 */
+	public ImmutableGraph<Integer, Transport> graph() {
+		CompactGraph.Builder<Transport> builder = new CompactGraph.Builder<>(Transport.class);
+		for (int i = 0; i < nodes; i++) builder.addNode(i + 1);
+		for (int e = 0; e < edgeCount; e++)
+			builder.addEdge(sources[e] + 1, targets[e] + 1, TRANSPORTS[transports[e]]);
+		return new ImmutableGraph<>(builder.build());
+	}
+
+	/**
+	 * @return the lines of the graph file, see
+	 *         {@link ScotlandYardGraphReader#fromLines(List)}; created as they
+	 *         are read
+	 */
+	public List<String> graphLines() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+				if (index == 0) return nodes + " " + edgeCount;
+				if (index <= nodes) return String.valueOf(index);
+				int e = index - nodes - 1;
+				return (sources[e] + 1) + " " + (targets[e] + 1) + " " + name(TRANSPORTS[transports[e]]);
+			}
+
+			@Override
+			public int size() {
+				return 1 + nodes + edgeCount;
+			}
+		};
+	}
+
+	/**
+	 * @return the lines of the position file, see
+	 *         {@link ScotlandYardGraphReader#positionsFromLines(List)};
+	 *         created as they are read
+	 */
+	public List<String> positionLines() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+				if (index == 0) return String.valueOf(nodes);
+				return index + " " + xs[index - 1] + " " + ys[index - 1];
+			}
+
+			@Override
+			public int size() {
+				return 1 + nodes;
+			}
+		};
+	}
+
+	/**
+	 * Writes the map, replacing the files if they exist
+	 *
+	 * @param graph the graph file; not null
+	 * @param positions the position file; not null
+	 * @throws IOException if a file cannot be written
+	 */
+	public void write(Path graph, Path positions) throws IOException {
+		Files.write(graph, graphLines(), StandardCharsets.UTF_8);
+		Files.write(positions, positionLines(), StandardCharsets.UTF_8);
+	}
+
+	// the capitalisation of graph.txt
+	private static String name(Transport transport) {
+		String name = transport.name();
+		return name.charAt(0) + name.substring(1).toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Generates a map from the command line:
+	 * {@code <nodes> <graph.txt> <pos.txt> [seed]}
+	 *
+	 * @param args the arguments
+	 * @throws IOException if the map cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: MapGenerator <nodes> <graph.txt> <pos.txt> [seed=0]");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		MapGenerator map = new Builder(Integer.parseInt(args[0]))
+				.seed(args.length > 3 ? Long.parseLong(args[3]) : 0).build();
+		map.write(Paths.get(args[1]), Paths.get(args[2]));
+		StringBuilder edges = new StringBuilder();
+		for (Transport transport : TRANSPORTS)
+			edges.append(", ").append(map.edgeCount(transport)).append(' ').append(name(transport));
+		System.out.printf("%d nodes, %d edges%s in %.1fs%n", map.nodeCount(), map.edgeCount(),
+				edges, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * A builder for {@link MapGenerator}
+	 */
+	public static final class Builder {
+
+		private final int nodes;
+		private long seed;
+
+		/**
+		 * Creates a builder for a map of the given size
+		 *
+		 * @param nodes the number of nodes, from 1 to {@link #MAX_NODES}
+		 */
+		public Builder(int nodes) {
+			if (nodes < 1 || nodes > MAX_NODES) throw new IllegalArgumentException(
+					"Node count must be between 1 and " + MAX_NODES + ", got " + nodes);
+			this.nodes = nodes;
+		}
+
+		/**
+		 * Sets the seed of the map, defaults to 0
+		 *
+		 * @param seed the seed
+		 * @return the builder for chaining; never null
+		 */
+		public Builder seed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * @return the generated map; never null
+		 */
+		public MapGenerator build() {
+			return new MapGenerator(nodes, seed);
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+
+/**
+ * Generates valid moves into a caller supplied {@code long[]} using the
+ * {@link PackedMove} encoding. The rules are the same as the ones
+ * {@link ScotlandYardModel} uses to build the move set given to
+ * {@link Player#makeMove}, so
+ * {@code PackedMove.toMoves(buffer, generator.mrXMoves(...))} equals that set.
+ *
+ * Ticket counts are given as an {@code int[]} indexed by
+ * {@link Ticket#ordinal()} and detective locations as a {@link NodeSet} of
+ * node indices. After construction no method allocates; a generator holds
+ * scratch space so each thread needs its own instance.
+ */
+public final class MoveGenerator {
+
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int TICKET_COUNT = Ticket.values().length;
+	private static final int BLACK = Colour.BLACK.ordinal();
+
+	private final NeighbourIndex neighbours;
+	private final int[] ticketOfEdge;
+	private final int[] firstMasks;
+	private final int[] secondMasks;
+	private final int maxMoves;
+
+	/**
+	 * Creates a generator for the given map
+	 *
+	 * @param neighbours the index of the map; not null
+	 */
+	public MoveGenerator(NeighbourIndex neighbours) {
+		this.neighbours = Objects.requireNonNull(neighbours);
+		int size = neighbours.size();
+		int maxDegree = 0;
+		for (int i = 0; i < size; i++) {
+			int location = neighbours.valueOf(i);
+			if (location < 0 || location > PackedMove.MAX_DESTINATION)
+				throw new IllegalArgumentException(location + " cannot be encoded");
+			maxDegree = Math.max(maxDegree, neighbours.graph().degree(i));
+		}
+		// the slots of a NeighbourIndex are grouped by transport, remember the
+		// ticket for every slot so the generator can walk them in one pass
+		ticketOfEdge = new int[neighbours.graph().edgeCount()];
+		for (int i = 0; i < size; i++)
+			for (Transport transport : Transport.values())
+				for (int n = neighbours.start(i, transport); n < neighbours.end(i, transport); n++)
+					ticketOfEdge[n] = Ticket.fromTransport(transport).ordinal();
+		firstMasks = new int[size];
+		secondMasks = new int[size];
+		maxMoves = 2 * maxDegree + 4 * maxDegree * maxDegree + 1;
+	}
+
+	/**
+	 * @return the index this generator uses; never null
+	 */
+	public NeighbourIndex neighbours() {
+		return neighbours;
+	}
+
+	/**
+	 * @return a buffer length that is always large enough for a single call
+	 */
+	public int maxMoves() {
+		return maxMoves;
+	}
+
+	/**
+	 * Generates the moves of a detective
+	 *
+	 * @param colour the colour of the detective; not null
+	 * @param location the location of the detective
+	 * @param tickets the detective's ticket counts by ordinal; not null
+	 * @param detectives node indices occupied by detectives; not null
+	 * @param out receives the moves; not null
+	 * @return number of moves written, at least one as a detective that cannot
+	 *         move gets a pass move
+	 */
+	public int detectiveMoves(Colour colour, int location, int[] tickets, NodeSet detectives,
+			long[] out) {
+		int node = indexOf(location);
+		int count = 0;
+		int start = neighbours.start(node);
+		int end = neighbours.end(node);
+		for (int n = start; n < end; n++) {
+			int target = neighbours.target(n);
+			int ticket = ticketOfEdge[n];
+			if (tickets[ticket] == 0 || detectives.contains(target)) continue;
+			if ((firstMasks[target] & (1 << ticket)) != 0) continue;
+			firstMasks[target] |= 1 << ticket;
+			out[count++] = PackedMove.ticket(colour.ordinal(), ticket, neighbours.valueOf(target));
+		}
+		for (int n = start; n < end; n++) firstMasks[neighbours.target(n)] = 0;
+		if (count == 0) out[count++] = PackedMove.pass(colour);
+		return count;
+	}
+
+	/**
+	 * Generates the moves of Mr.X
+	 *
+	 * @param location the location of Mr.X
+	 * @param tickets Mr.X's ticket counts by ordinal; not null
+	 * @param detectives node indices occupied by detectives; not null
+	 * @param lastRound whether Mr.X is about to play the last round, in which
+	 *        case double moves are not allowed
+	 * @param out receives the moves; not null
+	 * @return number of moves written, could be zero
+	 */
+	public int mrXMoves(int location, int[] tickets, NodeSet detectives, boolean lastRound,
+			long[] out) {
+		int node = indexOf(location);
+		boolean canDouble = tickets[DOUBLE] > 0 && !lastRound;
+		boolean hasSecret = tickets[SECRET] > 0;
+		int start = neighbours.start(node);
+		int end = neighbours.end(node);
+		for (int n = start; n < end; n++) {
+			int target = neighbours.target(n);
+			if (!detectives.contains(target)) firstMasks[target] |= 1 << ticketOfEdge[n];
+		}
+		int count = 0;
+		for (int n = start; n < end; n++) {
+			int first = neighbours.target(n);
+			int firstTickets = firstMasks[first];
+			if (firstTickets == 0) continue;
+			firstMasks[first] = 0;
+			int firstDestination = neighbours.valueOf(first);
+
+			int singles = 0;
+			for (int t = 0; t < TICKET_COUNT; t++)
+				if ((firstTickets & (1 << t)) != 0 && tickets[t] > 0) singles |= 1 << t;
+			if (hasSecret) singles |= 1 << SECRET;
+			for (int t = 0; t < TICKET_COUNT; t++)
+				if ((singles & (1 << t)) != 0)
+					out[count++] = PackedMove.ticket(BLACK, t, firstDestination);
+
+			if (!canDouble) continue;
+			int secondStart = neighbours.start(first);
+			int secondEnd = neighbours.end(first);
+			for (int m = secondStart; m < secondEnd; m++) {
+				int target = neighbours.target(m);
+				if (!detectives.contains(target)) secondMasks[target] |= 1 << ticketOfEdge[m];
+			}
+			for (int m = secondStart; m < secondEnd; m++) {
+				int second = neighbours.target(m);
+				int secondTickets = secondMasks[second];
+				if (secondTickets == 0) continue;
+				secondMasks[second] = 0;
+				int secondDestination = neighbours.valueOf(second);
+				// one bit per (first ticket, second ticket) pair
+				int pairs = 0;
+				for (int t1 = 0; t1 < TICKET_COUNT; t1++) {
+					if ((firstTickets & (1 << t1)) == 0) continue;
+					for (int t2 = 0; t2 < TICKET_COUNT; t2++) {
+						if ((secondTickets & (1 << t2)) == 0) continue;
+						pairs |= doubles(t1, t2, tickets);
+					}
+				}
+				for (int pair = 0; pair < TICKET_COUNT * TICKET_COUNT; pair++)
+					if ((pairs & (1 << pair)) != 0)
+						out[count++] = PackedMove.doubleMove(BLACK,
+								pair / TICKET_COUNT, firstDestination,
+								pair % TICKET_COUNT, secondDestination);
+			}
+		}
+		return count;
+	}
+
+	// the double moves allowed along a pair of edges with tickets t1 and t2,
+	// mirrors ScotlandYardModel.mrXValidMoves
+	private static int doubles(int t1, int t2, int[] tickets) {
+		int pairs = 0;
+		if (t1 == t2 ? tickets[t2] >= 2 : tickets[t1] > 0 && tickets[t2] > 0)
+			pairs |= pair(t1, t2);
+		if (tickets[SECRET] > 0) {
+			if (tickets[t2] > 0) pairs |= pair(SECRET, t2);
+			if (tickets[t1] > 0) pairs |= pair(t1, SECRET);
+		}
+		if (tickets[SECRET] >= 2) pairs |= pair(SECRET, SECRET);
+		return pairs;
+	}
+
+	private static int pair(int first, int second) {
+		return 1 << (first * TICKET_COUNT + second);
+	}
+
+	private int indexOf(int location) {
+		int index = neighbours.indexOf(location);
+		if (index < 0) throw new IllegalArgumentException(location + " is not on the map");
+		return index;
+	}
+
+}
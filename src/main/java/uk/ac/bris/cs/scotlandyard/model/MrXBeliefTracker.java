@@ -0,0 +1,213 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+/**
+ * A {@link Spectator} that keeps a probability distribution over Mr.X's
+ * location. Every time Mr.X uses a ticket, the probability of each node is
+ * spread evenly over the edges he could have taken with that ticket
+ * ({@link Ticket#SECRET} covers every transport, ferries can only be taken
+ * with it, see {@link Ticket#fromTransport(Transport)}), ignoring nodes
+ * occupied by detectives. Reveal rounds collapse the distribution to a
+ * single node.
+ *
+ * The update methods ({@link #observeTicket(Ticket, NodeSet)},
+ * {@link #observeLocation(int)} and {@link #eliminate(int)}) take node
+ * indices (see {@link NeighbourIndex#indexOf(int)}), run in time linear to the
+ * number of edges and never allocate, so a tracker can be copied with
+ * {@link #copyFrom(MrXBeliefTracker)} and updated inside search rollouts. Not
+ * thread safe.
+ */
+public class MrXBeliefTracker implements Spectator {
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final NeighbourIndex neighbours;
+	private final NodeSet occupied;
+	private double[] belief;
+	private double[] scratch;
+	private boolean reveal;
+
+	/**
+	 * Creates a tracker where Mr.X is equally likely to start anywhere
+	 *
+	 * @param graph the map of the game; not null
+	 */
+	public MrXBeliefTracker(Graph<Integer, Transport> graph) {
+		this(NeighbourIndex.of(Objects.requireNonNull(graph)));
+	}
+
+	/**
+	 * Creates a tracker where Mr.X is equally likely to start anywhere
+	 *
+	 * @param neighbours the index of the map; not null
+	 */
+	public MrXBeliefTracker(NeighbourIndex neighbours) {
+		this.neighbours = Objects.requireNonNull(neighbours);
+		this.occupied = NodeSet.of(neighbours);
+		this.belief = new double[neighbours.size()];
+		this.scratch = new double[neighbours.size()];
+		reset();
+	}
+
+	/**
+	 * Resets to a uniform distribution over all nodes
+	 */
+	public void reset() {
+		Arrays.fill(belief, 1.0 / belief.length);
+	}
+
+	/**
+	 * Replaces the distribution with the one of the other tracker, which must
+	 * be for the same map
+	 *
+	 * @param other the tracker to copy from; not null
+	 */
+	public void copyFrom(MrXBeliefTracker other) {
+		if (other.belief.length != belief.length)
+			throw new IllegalArgumentException("Trackers are for different maps");
+		System.arraycopy(other.belief, 0, belief, 0, belief.length);
+	}
+
+	/**
+	 * @return the index used to convert between locations and node indices;
+	 *         never null
+	 */
+	public NeighbourIndex neighbours() {
+		return neighbours;
+	}
+
+	/**
+	 * @param index the node index
+	 * @return the probability of Mr.X being at the node
+	 */
+	public double probability(int index) {
+		return belief[index];
+	}
+
+	/**
+	 * Mr.X used the given ticket, every node he could have reached that is not
+	 * in {@code occupied} becomes a candidate
+	 *
+	 * @param ticket the ticket used; not null
+	 * @param occupied nodes Mr.X cannot move to; not null
+	 */
+	public void observeTicket(Ticket ticket, NodeSet occupied) {
+		Arrays.fill(scratch, 0);
+		for (int node = 0; node < belief.length; node++) {
+			double p = belief[node];
+			if (p == 0 || occupied.contains(node)) continue;
+			int choices = 0;
+			for (Transport transport : TRANSPORTS) {
+				if (!usable(ticket, transport)) continue;
+				for (int n = neighbours.start(node, transport); n < neighbours.end(node, transport); n++)
+					if (!occupied.contains(neighbours.target(n))) choices++;
+			}
+			if (choices == 0) continue;
+			double share = p / choices;
+			for (Transport transport : TRANSPORTS) {
+				if (!usable(ticket, transport)) continue;
+				for (int n = neighbours.start(node, transport); n < neighbours.end(node, transport); n++) {
+					int target = neighbours.target(n);
+					if (!occupied.contains(target)) scratch[target] += share;
+				}
+			}
+		}
+		double[] swap = belief;
+		belief = scratch;
+		scratch = swap;
+		normalise();
+	}
+
+	/**
+	 * Mr.X was seen at the given node
+	 *
+	 * @param index the node index
+	 */
+	public void observeLocation(int index) {
+		Arrays.fill(belief, 0);
+		belief[index] = 1;
+	}
+
+	/**
+	 * Mr.X is known not to be at the given node, e.g. a detective moved there
+	 * and the game is not over
+	 *
+	 * @param index the node index
+	 */
+	public void eliminate(int index) {
+		belief[index] = 0;
+		normalise();
+	}
+
+	/**
+	 * Finds the most likely locations of Mr.X
+	 *
+	 * @param out receives node indices, most likely first; the length of the
+	 *        array is the number of locations to find; not null
+	 * @return the number of indices written, fewer than {@code out.length} if
+	 *         there are fewer possible locations
+	 */
+	public int topK(int[] out) {
+		if (out.length == 0) return 0;
+		int count = 0;
+		for (int node = 0; node < belief.length; node++) {
+			double p = belief[node];
+			if (p == 0 || (count == out.length && p <= belief[out[count - 1]])) continue;
+			int i = count < out.length ? count++ : count - 1;
+			while (i > 0 && belief[out[i - 1]] < p) {
+				out[i] = out[i - 1];
+				i--;
+			}
+			out[i] = node;
+		}
+		return count;
+	}
+
+	private void normalise() {
+		double total = 0;
+		for (double p : belief) total += p;
+		if (total == 0) {
+			// the observations contradict each other, start over
+			reset();
+			return;
+		}
+		for (int i = 0; i < belief.length; i++) belief[i] /= total;
+	}
+
+	private static boolean usable(Ticket ticket, Transport transport) {
+		return ticket == Ticket.SECRET || Ticket.fromTransport(transport) == ticket;
+	}
+
+	@Override
+	public void onRoundStarted(ScotlandYardView view, int round) {
+		reveal = view.getRounds().get(round - 1);
+	}
+
+	@Override
+	public void onMoveMade(ScotlandYardView view, Move move) {
+		if (!(move instanceof TicketMove)) return; // double moves are followed by both halves
+		TicketMove ticketMove = (TicketMove) move;
+		if (move.colour().isMrX()) {
+			if (reveal) {
+				observeLocation(neighbours.indexOf(ticketMove.destination()));
+			} else {
+				occupied.clear();
+				for (Colour colour : view.getPlayers()) {
+					if (colour.isMrX()) continue;
+					Optional<Integer> location = view.getPlayerLocation(colour);
+					int index = location.isPresent() ? neighbours.indexOf(location.get()) : -1;
+					if (index >= 0) occupied.add(index);
+				}
+				observeTicket(ticketMove.ticket(), occupied);
+			}
+		} else {
+			eliminate(neighbours.indexOf(ticketMove.destination()));
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+/**
+ * A {@link Spectator} that keeps track of every location Mr.X could be at,
+ * using only what the detectives can see: the tickets Mr.X uses, his location
+ * on reveal rounds and the locations of the detectives.
+ *
+ * Register one tracker per game before the first
+ * {@link ScotlandYardGame#startRotate()}. Updates reuse the same bitsets; the
+ * tracker is not thread safe so copy {@link #candidates()} when reading it
+ * from another thread.
+ */
+public class MrXCandidateTracker implements Spectator {
+
+	private final NeighbourIndex neighbours;
+	private final NodeSet occupied;
+	private NodeSet candidates;
+	private NodeSet scratch;
+	private boolean reveal;
+
+	/**
+	 * Creates a tracker where Mr.X could start anywhere on the map
+	 *
+	 * @param graph the map of the game; not null
+	 */
+	public MrXCandidateTracker(Graph<Integer, Transport> graph) {
+		this(NeighbourIndex.of(graph));
+		candidates.fill();
+	}
+
+	/**
+	 * Creates a tracker where Mr.X starts at one of the given locations, e.g.
+	 * {@link StandardGame#MRX_LOCATIONS}
+	 *
+	 * @param graph the map of the game; not null
+	 * @param startLocations possible starting locations; not null
+	 */
+	public MrXCandidateTracker(Graph<Integer, Transport> graph,
+			Collection<Integer> startLocations) {
+		this(NeighbourIndex.of(graph));
+		for (int location : Objects.requireNonNull(startLocations)) {
+			int index = neighbours.indexOf(location);
+			if (index < 0) throw new IllegalArgumentException(location + " is not on the map");
+			candidates.add(index);
+		}
+	}
+
+	private MrXCandidateTracker(NeighbourIndex neighbours) {
+		this.neighbours = neighbours;
+		this.occupied = NodeSet.of(neighbours);
+		this.candidates = NodeSet.of(neighbours);
+		this.scratch = NodeSet.of(neighbours);
+	}
+
+	/**
+	 * @return the index used to convert between locations and node indices of
+	 *         {@link #candidates()}; never null
+	 */
+	public NeighbourIndex neighbours() {
+		return neighbours;
+	}
+
+	/**
+	 * @return the live set of node indices Mr.X could be at, must not be
+	 *         modified; never null
+	 */
+	public NodeSet candidates() {
+		return candidates;
+	}
+
+	/**
+	 * @return locations Mr.X could be at; never null
+	 */
+	public int[] candidateLocations() {
+		return candidates.toLocations(neighbours);
+	}
+
+	@Override
+	public void onRoundStarted(ScotlandYardView view, int round) {
+		reveal = view.getRounds().get(round - 1);
+	}
+
+	@Override
+	public void onMoveMade(ScotlandYardView view, Move move) {
+		if (!(move instanceof TicketMove)) return; // double moves are followed by both halves
+		TicketMove ticketMove = (TicketMove) move;
+		if (move.colour().isMrX()) {
+			if (reveal) {
+				candidates.clear();
+				candidates.add(neighbours.indexOf(ticketMove.destination()));
+			} else {
+				updateOccupied(view);
+				candidates.andNot(occupied);
+				scratch.clear();
+				candidates.expand(neighbours, ticketMove.ticket(), scratch);
+				scratch.andNot(occupied);
+				NodeSet swap = candidates;
+				candidates = scratch;
+				scratch = swap;
+			}
+		} else {
+			// Mr.X would have been caught had he been there
+			candidates.remove(neighbours.indexOf(ticketMove.destination()));
+		}
+	}
+
+	private void updateOccupied(ScotlandYardView view) {
+		occupied.clear();
+		for (Colour colour : view.getPlayers()) {
+			if (colour.isMrX()) continue;
+			Optional<Integer> location = view.getPlayerLocation(colour);
+			int index = location.isPresent() ? neighbours.indexOf(location.get()) : -1;
+			if (index >= 0) occupied.add(index);
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+/**
+ * An index over a Scotland Yard map that groups the neighbours of every node
+ * by {@link Transport}. Neighbours are stored as node indices of the backing
+ * {@link CompactGraph} in primitive arrays so a player without tickets for a
+ * transport can skip all of its edges at once:
+ *
+ * <pre>
+ * int index = neighbours.indexOf(location);
+ * for (int i = neighbours.start(index, BUS); i &lt; neighbours.end(index, BUS); i++) {
+ * 	int destination = neighbours.valueOf(neighbours.target(i));
+ * }
+ * </pre>
+ */
+public final class NeighbourIndex {
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final int TRANSPORT_COUNT = TRANSPORTS.length;
+
+	private final CompactGraph<Transport> graph;
+	private final int[] offsets;
+	private final int[] targets;
+
+	private NeighbourIndex(CompactGraph<Transport> graph) {
+		this.graph = graph;
+		int size = graph.size();
+		offsets = new int[size * TRANSPORT_COUNT + 1];
+		for (int edge = 0; edge < graph.edgeCount(); edge++)
+			offsets[graph.edgeSource(edge) * TRANSPORT_COUNT + graph.edgeCode(edge) + 1]++;
+		for (int i = 0; i < size * TRANSPORT_COUNT; i++)
+			offsets[i + 1] += offsets[i];
+		int[] cursor = new int[size * TRANSPORT_COUNT];
+		System.arraycopy(offsets, 0, cursor, 0, cursor.length);
+		targets = new int[graph.edgeCount()];
+		for (int edge = 0; edge < graph.edgeCount(); edge++)
+			targets[cursor[graph.edgeSource(edge) * TRANSPORT_COUNT + graph.edgeCode(edge)]++] =
+					graph.edgeTarget(edge);
+	}
+
+	/**
+	 * Builds the index for the given map
+	 *
+	 * @param graph the map; not null
+	 * @return the index; never null
+	 */
+	public static NeighbourIndex of(Graph<Integer, Transport> graph) {
+		return new NeighbourIndex(
+				CompactGraph.copyOf(Objects.requireNonNull(graph), Transport.class));
+	}
+
+	/**
+	 * @return the compact graph this index is built from; never null
+	 */
+	public CompactGraph<Transport> graph() {
+		return graph;
+	}
+
+	/**
+	 * @see CompactGraph#indexOf(int)
+	 */
+	public int indexOf(int location) {
+		return graph.indexOf(location);
+	}
+
+	/**
+	 * @see CompactGraph#valueOf(int)
+	 */
+	public int valueOf(int index) {
+		return graph.valueOf(index);
+	}
+
+	/**
+	 * @param index the node index
+	 * @return the first slot of all neighbours of the node, slots up to
+	 *         {@link #end(int)} are grouped by transport in ordinal order
+	 */
+	public int start(int index) {
+		return offsets[index * TRANSPORT_COUNT];
+	}
+
+	/**
+	 * @param index the node index
+	 * @return one past the last slot of all neighbours of the node
+	 */
+	public int end(int index) {
+		return offsets[(index + 1) * TRANSPORT_COUNT];
+	}
+
+	/**
+	 * @param index the node index
+	 * @param transport the transport; not null
+	 * @return the first slot of neighbours reachable from the node by the
+	 *         given transport
+	 */
+	public int start(int index, Transport transport) {
+		return offsets[index * TRANSPORT_COUNT + transport.ordinal()];
+	}
+
+	/**
+	 * @param index the node index
+	 * @param transport the transport; not null
+	 * @return one past the last slot of neighbours reachable from the node by
+	 *         the given transport
+	 */
+	public int end(int index, Transport transport) {
+		return offsets[index * TRANSPORT_COUNT + transport.ordinal() + 1];
+	}
+
+	/**
+	 * @param index the node index
+	 * @param transport the transport; not null
+	 * @return number of neighbours reachable from the node by the given
+	 *         transport
+	 */
+	public int count(int index, Transport transport) {
+		return end(index, transport) - start(index, transport);
+	}
+
+	/**
+	 * @param slot the slot, see {@link #start(int, Transport)}
+	 * @return the node index of the neighbour at the given slot
+	 */
+	public int target(int slot) {
+		return targets[slot];
+	}
+
+	/**
+	 * @return number of nodes in the map
+	 */
+	public int size() {
+		return graph.size();
+	}
+
+}
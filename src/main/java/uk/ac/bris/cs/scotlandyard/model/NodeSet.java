@@ -0,0 +1,259 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A mutable set of node indices (see {@link NeighbourIndex#indexOf(int)})
+ * backed by a {@code long[]} bitset. All operations work in place or write
+ * into a caller supplied set so nothing is allocated after construction.
+ *
+ * Sets can only be combined with sets of the same capacity. Not thread safe.
+ */
+public final class NodeSet {
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final int capacity;
+	private final long[] words;
+
+	/**
+	 * Creates an empty set
+	 *
+	 * @param capacity the number of nodes, indices must be in
+	 *        {@code [0, capacity)}
+	 */
+	public NodeSet(int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("capacity < 0");
+		this.capacity = capacity;
+		this.words = new long[(capacity + 63) >>> 6];
+	}
+
+	/**
+	 * Creates an empty set for all nodes of the given index
+	 *
+	 * @param neighbours the index; not null
+	 * @return the set; never null
+	 */
+	public static NodeSet of(NeighbourIndex neighbours) {
+		return new NodeSet(neighbours.size());
+	}
+
+	/**
+	 * @return the number of nodes this set can hold
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @param index the node index
+	 * @return whether the node is in this set
+	 * @throws IndexOutOfBoundsException if the index is not in
+	 *         {@code [0, capacity)}
+	 */
+	public boolean contains(int index) {
+		checkIndex(index);
+		return (words[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @param index the node index to add
+	 * @throws IndexOutOfBoundsException if the index is not in
+	 *         {@code [0, capacity)}
+	 */
+	public void add(int index) {
+		checkIndex(index);
+		words[index >>> 6] |= 1L << index;
+	}
+
+	/**
+	 * @param index the node index to remove
+	 * @throws IndexOutOfBoundsException if the index is not in
+	 *         {@code [0, capacity)}
+	 */
+	public void remove(int index) {
+		checkIndex(index);
+		words[index >>> 6] &= ~(1L << index);
+	}
+
+	/**
+	 * Removes all nodes from this set
+	 */
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	/**
+	 * Adds all nodes to this set
+	 */
+	public void fill() {
+		Arrays.fill(words, -1L);
+		trim();
+	}
+
+	/**
+	 * @return the number of nodes in this set
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words) count += Long.bitCount(word);
+		return count;
+	}
+
+	public boolean isEmpty() {
+		for (long word : words) if (word != 0) return false;
+		return true;
+	}
+
+	/**
+	 * Finds the next node in this set
+	 *
+	 * @param from the index to start from, inclusive
+	 * @return the next index or -1 if there are none
+	 */
+	public int next(int from) {
+		if (from >= capacity) return -1;
+		int word = from >>> 6;
+		long bits = words[word] & (-1L << from);
+		while (true) {
+			if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if (++word == words.length) return -1;
+			bits = words[word];
+		}
+	}
+
+	/**
+	 * Calls the consumer with every node index in ascending order
+	 *
+	 * @param consumer the consumer; not null
+	 */
+	public void forEach(IntConsumer consumer) {
+		for (int i = next(0); i >= 0; i = next(i + 1)) consumer.accept(i);
+	}
+
+	/**
+	 * Replaces the content of this set with the other set
+	 */
+	public void copyFrom(NodeSet other) {
+		checkCompatible(other);
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+
+	/**
+	 * @return a new set with the same content
+	 */
+	public NodeSet copy() {
+		NodeSet copy = new NodeSet(capacity);
+		copy.copyFrom(this);
+		return copy;
+	}
+
+	/**
+	 * Adds all nodes in the other set to this set
+	 */
+	public void or(NodeSet other) {
+		checkCompatible(other);
+		for (int i = 0; i < words.length; i++) words[i] |= other.words[i];
+	}
+
+	/**
+	 * Retains only the nodes that are also in the other set
+	 */
+	public void and(NodeSet other) {
+		checkCompatible(other);
+		for (int i = 0; i < words.length; i++) words[i] &= other.words[i];
+	}
+
+	/**
+	 * Removes all nodes that are in the other set
+	 */
+	public void andNot(NodeSet other) {
+		checkCompatible(other);
+		for (int i = 0; i < words.length; i++) words[i] &= ~other.words[i];
+	}
+
+	/**
+	 * Adds every neighbour of the nodes in this set that can be reached by the
+	 * given transport into the given set. The target set is not cleared first.
+	 *
+	 * @param neighbours the index; not null
+	 * @param transport the transport; not null
+	 * @param into the set to add to, must not be this set; not null
+	 */
+	public void expand(NeighbourIndex neighbours, Transport transport, NodeSet into) {
+		checkCompatible(into);
+		if (into == this) throw new IllegalArgumentException("Cannot expand into itself");
+		for (int i = next(0); i >= 0; i = next(i + 1))
+			for (int n = neighbours.start(i, transport); n < neighbours.end(i, transport); n++)
+				into.add(neighbours.target(n));
+	}
+
+	/**
+	 * Adds every neighbour of the nodes in this set that can be reached with
+	 * the given ticket into the given set. A {@link Ticket#SECRET} ticket
+	 * reaches neighbours of every transport, a {@link Ticket#DOUBLE} ticket
+	 * reaches none. The target set is not cleared first.
+	 *
+	 * @param neighbours the index; not null
+	 * @param ticket the ticket; not null
+	 * @param into the set to add to, must not be this set; not null
+	 */
+	public void expand(NeighbourIndex neighbours, Ticket ticket, NodeSet into) {
+		Objects.requireNonNull(ticket);
+		for (Transport transport : TRANSPORTS)
+			if (ticket == Ticket.SECRET || Ticket.fromTransport(transport) == ticket)
+				expand(neighbours, transport, into);
+	}
+
+	/**
+	 * @param neighbours the index used to convert indices; not null
+	 * @return the locations of the nodes in this set in index order; never
+	 *         null
+	 */
+	public int[] toLocations(NeighbourIndex neighbours) {
+		int[] locations = new int[cardinality()];
+		int count = 0;
+		for (int i = next(0); i >= 0; i = next(i + 1)) locations[count++] = neighbours.valueOf(i);
+		return locations;
+	}
+
+	private void trim() {
+		int spare = (words.length << 6) - capacity;
+		if (spare > 0) words[words.length - 1] &= -1L >>> spare;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= capacity)
+			throw new IndexOutOfBoundsException(index + " is not in [0, " + capacity + ")");
+	}
+
+	private void checkCompatible(NodeSet other) {
+		if (other.capacity != capacity) throw new IllegalArgumentException(
+				"Capacity " + other.capacity + " != " + capacity);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		NodeSet that = (NodeSet) o;
+		return capacity == that.capacity && Arrays.equals(words, that.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * capacity + Arrays.hashCode(words);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("NodeSet{");
+		for (int i = next(0); i >= 0; i = next(i + 1)) {
+			if (sb.length() > 8) sb.append(", ");
+			sb.append(i);
+		}
+		return sb.append('}').toString();
+	}
+}
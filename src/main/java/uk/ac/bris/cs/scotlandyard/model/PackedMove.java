@@ -0,0 +1,199 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Encodes {@link Move}s as primitive {@code long}s so they can be generated
+ * and stored without allocation, see {@link MoveGenerator}. The layout is
+ *
+ * <pre>
+ * bits  0-2   colour ordinal
+ * bits  3-4   kind: pass, ticket or double
+ * bits  5-7   ticket ordinal (first ticket of a double move)
+ * bits  8-10  second ticket ordinal of a double move
+ * bits 11-36  destination (first destination of a double move)
+ * bits 37-62  final destination of a double move
+ * </pre>
+ *
+ * so destinations must be in {@code [0, 2^26)}. Use
+ * {@link #toMove(long)} and {@link #fromMove(Move)} to convert to and from
+ * the {@link Move} hierarchy.
+ */
+public final class PackedMove {
+
+	public static final int PASS = 0;
+	public static final int TICKET = 1;
+	public static final int DOUBLE = 2;
+
+	/**
+	 * Largest destination that can be encoded
+	 */
+	public static final int MAX_DESTINATION = (1 << 26) - 1;
+
+	private static final Colour[] COLOURS = Colour.values();
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private PackedMove() {}
+
+	/**
+	 * @return an encoded {@link PassMove}
+	 */
+	public static long pass(Colour colour) {
+		return colour.ordinal() | (PASS << 3);
+	}
+
+	/**
+	 * @return an encoded {@link TicketMove}
+	 */
+	public static long ticket(Colour colour, Ticket ticket, int destination) {
+		return colour.ordinal() | (TICKET << 3) | (ticket.ordinal() << 5)
+				| ((long) checkDestination(destination) << 11);
+	}
+
+	/**
+	 * @return an encoded {@link DoubleMove}
+	 */
+	public static long doubleMove(Colour colour, Ticket first, int firstDestination,
+			Ticket second, int secondDestination) {
+		return colour.ordinal() | (DOUBLE << 3) | (first.ordinal() << 5) | (second.ordinal() << 8)
+				| ((long) checkDestination(firstDestination) << 11)
+				| ((long) checkDestination(secondDestination) << 37);
+	}
+
+	/**
+	 * Same as {@link #ticket(Colour, Ticket, int)} without any checks, for
+	 * use in generators
+	 */
+	static long ticket(int colour, int ticket, int destination) {
+		return colour | (TICKET << 3) | (ticket << 5) | ((long) destination << 11);
+	}
+
+	/**
+	 * Same as {@link #doubleMove(Colour, Ticket, int, Ticket, int)} without
+	 * any checks, for use in generators
+	 */
+	static long doubleMove(int colour, int first, int firstDestination, int second,
+			int secondDestination) {
+		return colour | (DOUBLE << 3) | (first << 5) | (second << 8)
+				| ((long) firstDestination << 11) | ((long) secondDestination << 37);
+	}
+
+	public static Colour colour(long move) {
+		return COLOURS[(int) (move & 0x7)];
+	}
+
+	/**
+	 * @return one of {@link #PASS}, {@link #TICKET} or {@link #DOUBLE}
+	 */
+	public static int kind(long move) {
+		return (int) ((move >>> 3) & 0x3);
+	}
+
+	/**
+	 * @return the ticket of a ticket move or the first ticket of a double move
+	 */
+	public static Ticket ticket(long move) {
+		return TICKETS[(int) ((move >>> 5) & 0x7)];
+	}
+
+	/**
+	 * @return the second ticket of a double move
+	 */
+	public static Ticket secondTicket(long move) {
+		return TICKETS[(int) ((move >>> 8) & 0x7)];
+	}
+
+	/**
+	 * @return the destination of a ticket move or the first destination of a
+	 *         double move
+	 */
+	public static int destination(long move) {
+		return (int) ((move >>> 11) & MAX_DESTINATION);
+	}
+
+	/**
+	 * @return the final destination of a double move
+	 */
+	public static int secondDestination(long move) {
+		return (int) ((move >>> 37) & MAX_DESTINATION);
+	}
+
+	/**
+	 * @return where the player ends up after the move, or -1 for a pass move
+	 */
+	public static int finalDestination(long move) {
+		switch (kind(move)) {
+			case TICKET:
+				return destination(move);
+			case DOUBLE:
+				return secondDestination(move);
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Decodes a move
+	 *
+	 * @param move the encoded move
+	 * @return the move; never null
+	 */
+	public static Move toMove(long move) {
+		Colour colour = colour(move);
+		switch (kind(move)) {
+			case TICKET:
+				return new TicketMove(colour, ticket(move), destination(move));
+			case DOUBLE:
+				return new DoubleMove(colour, ticket(move), destination(move),
+						secondTicket(move), secondDestination(move));
+			case PASS:
+				return new PassMove(colour);
+			default:
+				throw new IllegalArgumentException("Not a packed move: " + move);
+		}
+	}
+
+	/**
+	 * Decodes the first {@code count} moves of the given buffer
+	 *
+	 * @param moves the encoded moves; not null
+	 * @param count number of moves to decode
+	 * @return a mutable set of moves; never null
+	 */
+	public static Set<Move> toMoves(long[] moves, int count) {
+		Set<Move> set = new HashSet<>();
+		for (int i = 0; i < count; i++) set.add(toMove(moves[i]));
+		return set;
+	}
+
+	/**
+	 * Encodes a move
+	 *
+	 * @param move the move; not null
+	 * @return the encoded move
+	 */
+	public static long fromMove(Move move) {
+		Objects.requireNonNull(move);
+		if (move instanceof TicketMove) {
+			TicketMove ticketMove = (TicketMove) move;
+			return ticket(move.colour(), ticketMove.ticket(), ticketMove.destination());
+		} else if (move instanceof DoubleMove) {
+			DoubleMove doubleMove = (DoubleMove) move;
+			return doubleMove(move.colour(),
+					doubleMove.firstMove().ticket(), doubleMove.firstMove().destination(),
+					doubleMove.secondMove().ticket(), doubleMove.secondMove().destination());
+		} else if (move instanceof PassMove) {
+			return pass(move.colour());
+		}
+		throw new IllegalArgumentException("Unknown move " + move);
+	}
+
+	private static int checkDestination(int destination) {
+		if (destination < 0 || destination > MAX_DESTINATION)
+			throw new IllegalArgumentException(destination + " cannot be encoded");
+		return destination;
+	}
+
+}
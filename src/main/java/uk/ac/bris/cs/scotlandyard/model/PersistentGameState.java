@@ -0,0 +1,279 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
+
+/**
+ * An immutable view of a game at one point in time, this is what
+ * {@link ScotlandYardModel} hands to {@link Player#makeMove}. Unlike the
+ * model itself it never changes, so it can be read from any number of
+ * threads while the game goes on.
+ *
+ * {@link #withMove(Move)} derives the state after a move without changing
+ * this one. The graph, rounds and colours are shared by every state of the
+ * same game and a player's record is only copied when the move changes it,
+ * so deriving a state copies a handful of references:
+ *
+ * <pre>
+ * PersistentGameState next = state.withMove(move);
+ * </pre>
+ *
+ * As with the model, Mr.X's actual location is kept out of the view,
+ * {@link #getPlayerLocation(Colour)} answers his last revealed location.
+ * Unlike {@link GameState} this is not meant for deep searches, every state
+ * is a new object.
+ */
+public final class PersistentGameState implements ScotlandYardView {
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final Game game;
+	private final Record[] records;
+	private final int current;
+	private final int round;
+	private final int mrXLastLocation;
+	private final boolean rotationComplete;
+
+	PersistentGameState(Game game, Record[] records, int current, int round,
+			int mrXLastLocation, boolean rotationComplete) {
+		this.game = game;
+		this.records = records;
+		this.current = current;
+		this.round = round;
+		this.mrXLastLocation = mrXLastLocation;
+		this.rotationComplete = rotationComplete;
+	}
+
+	/**
+	 * Derives the state after a move of the current player, following the
+	 * rules of {@link ScotlandYardModel#accept(Move)}. The move is expected to
+	 * be one of the current player's valid moves, only its colour is checked.
+	 *
+	 * @param move the move; not null
+	 * @return the new state; never null
+	 * @throws IllegalArgumentException if the move is not of the current
+	 *         player, or is a pass move of Mr.X
+	 */
+	public PersistentGameState withMove(Move move) {
+		Objects.requireNonNull(move, "Move cannot be null");
+		if (move.colour() != getCurrentPlayer())
+			throw new IllegalArgumentException("Move is not for the current player");
+		Record[] next = records.clone();
+		int round = this.round;
+		int mrXLastLocation = this.mrXLastLocation;
+		if (current == 0) {
+			if (move instanceof TicketMove) {
+				TicketMove ticketMove = (TicketMove) move;
+				next[0] = next[0].spend(ticketMove.ticket()).at(ticketMove.destination());
+				if (game.rounds.get(round++)) mrXLastLocation = ticketMove.destination();
+			} else if (move instanceof DoubleMove) {
+				DoubleMove doubleMove = (DoubleMove) move;
+				next[0] = next[0].spend(Ticket.DOUBLE)
+						.spend(doubleMove.firstMove().ticket())
+						.spend(doubleMove.secondMove().ticket())
+						.at(doubleMove.finalDestination());
+				if (game.rounds.get(round++)) mrXLastLocation = doubleMove.firstMove().destination();
+				if (game.rounds.get(round++)) mrXLastLocation = doubleMove.finalDestination();
+			} else {
+				throw new IllegalArgumentException("Mr.X cannot pass");
+			}
+		} else if (move instanceof TicketMove) {
+			TicketMove ticketMove = (TicketMove) move;
+			next[current] = next[current].spend(ticketMove.ticket()).at(ticketMove.destination());
+			next[0] = next[0].receive(ticketMove.ticket());
+		}
+		int player = (current + 1) % records.length;
+		return new PersistentGameState(game, next, player, round, mrXLastLocation,
+				player == 0 || (current != 0 && rotationComplete));
+	}
+
+	// the record of the player at the given index, states share it for as
+	// long as the player's location and tickets stay the same
+	Record record(int player) {
+		return records[player];
+	}
+
+	@Override
+	public List<Colour> getPlayers() {
+		return game.colours;
+	}
+
+	@Override
+	public Set<Colour> getWinningPlayers() {
+		Set<Colour> winners = new HashSet<>();
+		if (noRoundsLeft() || detectivesCantMove()) winners.add(BLACK);
+		if (mrXCantMove() || mrXCaptured())
+			winners.addAll(game.colours.subList(1, game.colours.size()));
+		return Collections.unmodifiableSet(winners);
+	}
+
+	@Override
+	public Optional<Integer> getPlayerLocation(Colour colour) {
+		if (colour == BLACK) return Optional.of(mrXLastLocation);
+		int index = game.colours.indexOf(colour);
+		return index < 0 ? Optional.empty() : Optional.of(records[index].location);
+	}
+
+	@Override
+	public Optional<Integer> getPlayerTickets(Colour colour, Ticket ticket) {
+		int index = game.colours.indexOf(colour);
+		return index < 0 ? Optional.empty()
+				: Optional.of(records[index].tickets[ticket.ordinal()]);
+	}
+
+	@Override
+	public boolean isGameOver() {
+		return detectivesCantMove() || mrXCantMove() || mrXCaptured() || noRoundsLeft();
+	}
+
+	@Override
+	public Colour getCurrentPlayer() {
+		return game.colours.get(current);
+	}
+
+	@Override
+	public int getCurrentRound() {
+		return round;
+	}
+
+	@Override
+	public List<Boolean> getRounds() {
+		return game.rounds;
+	}
+
+	@Override
+	public Graph<Integer, Transport> getGraph() {
+		return game.graph;
+	}
+
+	// the game over rules of the model only need to know whether a move exists
+	private boolean detectivesCantMove() {
+		for (int i = 1; i < records.length; i++)
+			if (canMove(i, false)) return false;
+		return true;
+	}
+
+	private boolean mrXCantMove() {
+		return rotationComplete && !canMove(0, true);
+	}
+
+	private boolean mrXCaptured() {
+		for (int i = 1; i < records.length; i++)
+			if (records[i].location == records[0].location) return true;
+		return false;
+	}
+
+	private boolean noRoundsLeft() {
+		return round >= game.rounds.size() && rotationComplete;
+	}
+
+	// a double move always starts with a single move, so single moves are enough
+	private boolean canMove(int player, boolean secret) {
+		NeighbourIndex neighbours = game.neighbours;
+		Record record = records[player];
+		int node = neighbours.indexOf(record.location);
+		if (node < 0) return false;
+		boolean anyTransport = secret && record.has(Ticket.SECRET);
+		for (Transport transport : TRANSPORTS) {
+			if (!anyTransport && !record.has(Ticket.fromTransport(transport))) continue;
+			for (int i = neighbours.start(node, transport); i < neighbours.end(node, transport); i++) {
+				int location = neighbours.valueOf(neighbours.target(i));
+				if (!occupiedByDetective(location) || (player != 0 && location == records[0].location))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean occupiedByDetective(int location) {
+		for (int i = 1; i < records.length; i++)
+			if (records[i].location == location) return true;
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "PersistentGameState{round=" + round + ", current=" + getCurrentPlayer()
+				+ ", players=" + game.colours + "}";
+	}
+
+	/**
+	 * What every state of one game shares
+	 */
+	static final class Game {
+
+		final List<Colour> colours;
+		final List<Boolean> rounds;
+		final Graph<Integer, Transport> graph;
+		final NeighbourIndex neighbours;
+
+		Game(List<Colour> colours, List<Boolean> rounds, Graph<Integer, Transport> graph,
+				NeighbourIndex neighbours) {
+			this.colours = Collections.unmodifiableList(new ArrayList<>(colours));
+			this.rounds = Collections.unmodifiableList(new ArrayList<>(rounds));
+			this.graph = new ImmutableGraph<>(graph);
+			this.neighbours = neighbours;
+		}
+	}
+
+	/**
+	 * The location and tickets of one player, never changed once created
+	 */
+	static final class Record {
+
+		final int location;
+		private final int[] tickets;
+
+		private Record(int location, int[] tickets) {
+			this.location = location;
+			this.tickets = tickets;
+		}
+
+		Record(int location, Map<Ticket, Integer> tickets) {
+			this(location, new int[TICKETS.length]);
+			for (Ticket ticket : TICKETS) this.tickets[ticket.ordinal()] = tickets.get(ticket);
+		}
+
+		boolean matches(int location, Map<Ticket, Integer> tickets) {
+			if (this.location != location) return false;
+			for (Ticket ticket : TICKETS)
+				if (this.tickets[ticket.ordinal()] != tickets.get(ticket)) return false;
+			return true;
+		}
+
+		boolean has(Ticket ticket) {
+			return tickets[ticket.ordinal()] > 0;
+		}
+
+		Record at(int location) {
+			return new Record(location, tickets);
+		}
+
+		Record spend(Ticket ticket) {
+			return adjust(ticket, -1);
+		}
+
+		Record receive(Ticket ticket) {
+			return adjust(ticket, 1);
+		}
+
+		private Record adjust(Ticket ticket, int by) {
+			int[] adjusted = tickets.clone();
+			adjusted[ticket.ordinal()] += by;
+			return new Record(location, adjusted);
+		}
+	}
+
+}
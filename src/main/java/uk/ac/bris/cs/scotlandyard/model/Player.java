@@ -14,7 +14,9 @@ public interface Player {
 	 * 
 	 * @param view a view of the current {@link ScotlandYardGame}, there are no
 	 *        guarantees on immutability or thread safety so you should no hold
-	 *        reference to the view beyond the scope of this method; never null
+	 *        reference to the view beyond the scope of this method, unless it
+	 *        is a {@link PersistentGameState} as handed by
+	 *        {@link ScotlandYardModel}; never null
 	 * @param location the location of the player
 	 * @param moves valid moves the player can make; never empty and never null
 	 * @param callback callback when a move is chosen from the given valid
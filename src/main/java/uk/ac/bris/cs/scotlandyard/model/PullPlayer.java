@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A player that is asked for its move by a {@link GameLoop} instead of
+ * calling back into the game, the asynchronous counterpart of
+ * {@link Player}. A synchronous player returns a completed future:
+ *
+ * <pre>
+ * PullPlayer first = PullPlayer.synchronous((view, location, moves) -&gt; moves.iterator().next());
+ * </pre>
+ *
+ * If the loop has a move timeout (see
+ * {@link GameLoop.Builder#moveTimeout(java.time.Duration)}) it cancels the
+ * future of a move that is too late and plays a fallback move instead.
+ * Players created with {@link #onExecutor(Synchronous, ExecutorService)}
+ * interrupt the abandoned computation; other players can check
+ * {@link CompletableFuture#isCancelled()} to stop early. The view is the
+ * state the game handed to the player, it does not change as the game moves
+ * on.
+ */
+@FunctionalInterface
+public interface PullPlayer {
+
+	/**
+	 * Called when the player is required to make a move
+	 *
+	 * @param view a view of the current game, see
+	 *        {@link Player#makeMove(ScotlandYardView, int, Set, java.util.function.Consumer)};
+	 *        never null
+	 * @param location the location of the player
+	 * @param moves valid moves the player can make; never empty and never null
+	 * @return the chosen move, completed on any thread; never null
+	 */
+	CompletableFuture<Move> chooseMove(ScotlandYardView view, int location, Set<Move> moves);
+
+	/**
+	 * A player that returns its move directly
+	 */
+	@FunctionalInterface
+	interface Synchronous {
+
+		/**
+		 * @see PullPlayer#chooseMove(ScotlandYardView, int, Set)
+		 * @return the chosen move; never null
+		 */
+		Move chooseMove(ScotlandYardView view, int location, Set<Move> moves);
+	}
+
+	/**
+	 * @param player the player; not null
+	 * @return a pull player that completes with the move returned by the
+	 *         given player; never null
+	 */
+	static PullPlayer synchronous(Synchronous player) {
+		Objects.requireNonNull(player);
+		return (view, location, moves) ->
+				CompletableFuture.completedFuture(player.chooseMove(view, location, moves));
+	}
+
+	/**
+	 * @param player the player; not null
+	 * @param executor runs the player; not null
+	 * @return a pull player that computes its move as a task of the executor,
+	 *         cancelling the future interrupts the task; never null
+	 */
+	static PullPlayer onExecutor(Synchronous player, ExecutorService executor) {
+		Objects.requireNonNull(player);
+		Objects.requireNonNull(executor);
+		return (view, location, moves) -> {
+			CompletableFuture<Move> move = new CompletableFuture<>();
+			Future<?> task = executor.submit(() -> {
+				try {
+					move.complete(player.chooseMove(view, location, moves));
+				} catch (Throwable e) {
+					move.completeExceptionally(e);
+				}
+			});
+			move.whenComplete((chosen, e) -> {
+				if (move.isCancelled()) task.cancel(true);
+			});
+			return move;
+		};
+	}
+
+	/**
+	 * @param player the player; not null
+	 * @return a pull player that completes with the move the given player
+	 *         passes to its callback, whether it does so before returning or
+	 *         later from another thread; never null
+	 */
+	static PullPlayer fromPlayer(Player player) {
+		Objects.requireNonNull(player);
+		return (view, location, moves) -> {
+			CompletableFuture<Move> move = new CompletableFuture<>();
+			player.makeMove(view, location, moves, move::complete);
+			return move;
+		};
+	}
+
+}
@@ -1,14 +1,20 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
-import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.GraphFile;
 import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
-import uk.ac.bris.cs.gamekit.graph.Node;
-import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
 
 //TODO test should be in same module, currently in scotlandyard-model
 /**
@@ -26,7 +32,8 @@ public class ScotlandYardGraphReader {
 	 * Converts lines of strings into a Scotland Yard game map
 	 * 
 	 * @param lines the lines
-	 * @return a graph for {@link ScotlandYardGame} to use
+	 * @return a graph for {@link ScotlandYardGame} to use, backed by a
+	 *         {@link CompactGraph}
 	 */
 	public static ImmutableGraph<Integer, Transport> fromLines(List<String> lines) {
 		if (lines == null) throw new NullPointerException("lines == null");
@@ -45,7 +52,7 @@ public class ScotlandYardGraphReader {
 		if (numberOfNodes + numberOfEdges > lines.size() - 1)
 			throw new IllegalArgumentException("Line count < (edge count + node count)");
 
-		UndirectedGraph<Integer, Transport> graph = new UndirectedGraph<>();
+		CompactGraph.Builder<Transport> graph = new CompactGraph.Builder<>(Transport.class);
 
 		// we read the first line already
 		for (int i = 1; i <= numberOfNodes; i++) {
@@ -53,7 +60,7 @@ public class ScotlandYardGraphReader {
 				throw new IllegalArgumentException("Expected non-empty line at line " + i);
 			String value = parseLine(i, lines, DELIMITER, 1)[0];
 			try {
-				graph.addNode(new Node<>(Integer.parseInt(value)));
+				graph.addNode(Integer.parseInt(value));
 			} catch (NumberFormatException e) {
 				throw new IllegalArgumentException(
 						"Expected integer at line " + i + "\n\t" + lines.get(i));
@@ -65,12 +72,12 @@ public class ScotlandYardGraphReader {
 				throw new IllegalArgumentException("Expected non-empty line at line " + i);
 			String[] segments = parseLine(i, lines, DELIMITER, 3);
 
-			Node<Integer> source;
-			Node<Integer> destination;
+			int source;
+			int destination;
 			Transport data;
 			try {
-				source = graph.getNode(Integer.parseInt(segments[0]));
-				destination = graph.getNode(Integer.parseInt(segments[1]));
+				source = Integer.parseInt(segments[0]);
+				destination = Integer.parseInt(segments[1]);
 			} catch (NumberFormatException e) {
 				throw new IllegalArgumentException(
 						"Expected integer at line " + i + "\n\t" + lines.get(i));
@@ -82,14 +89,50 @@ public class ScotlandYardGraphReader {
 						"Expected enum with value of " + Arrays.toString(Transport.values())
 								+ " at line " + i + "\n\t" + lines.get(i));
 			}
-			if (source == null) throw new IllegalArgumentException(
+			if (!graph.containsNode(source)) throw new IllegalArgumentException(
 					"Expected source node to exist in graph  at line " + i + "\n\t" + lines.get(i));
-			if (destination == null) throw new IllegalArgumentException(
+			if (!graph.containsNode(destination)) throw new IllegalArgumentException(
 					"Expected destination node to exist in graph  at line " + i + "\n\t"
 							+ lines.get(i));
-			graph.addEdge(new Edge<>(source, destination, data));
+			graph.addEdge(source, destination, data);
 		}
-		return new ImmutableGraph<>(graph);
+		return new ImmutableGraph<>(graph.build());
+	}
+
+	/**
+	 * Reads a map compiled by {@link MapCompiler}, see {@link GraphFile}
+	 *
+	 * @param path the compiled map; not null
+	 * @return a graph for {@link ScotlandYardGame} to use, equal to the graph
+	 *         of the lines it was compiled from
+	 * @throws IOException if the file cannot be read or is not a compiled map
+	 */
+	public static ImmutableGraph<Integer, Transport> fromFile(Path path) throws IOException {
+		return new ImmutableGraph<>(GraphFile.read(path, Transport.class).graph());
+	}
+
+	/**
+	 * Converts lines of a position file into the position of each node, lines
+	 * that are not a node followed by its x and y are skipped
+	 *
+	 * @param lines the lines
+	 * @return the x and y of each node by node value, as written in the lines
+	 */
+	public static Map<Integer, Entry<Integer, Integer>> positionsFromLines(List<String> lines) {
+		if (lines == null) throw new NullPointerException("lines == null");
+		Map<Integer, Entry<Integer, Integer>> positions = new HashMap<>();
+		for (int i = 0; i < lines.size(); i++) {
+			String[] segments = lines.get(i).trim().split("\\s+");
+			if (segments.length != 3) continue;
+			try {
+				positions.put(Integer.parseInt(segments[0]), new SimpleImmutableEntry<>(
+						Integer.parseInt(segments[1]), Integer.parseInt(segments[2])));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						"Expected integer at line " + i + "\n\t" + lines.get(i));
+			}
+		}
+		return Collections.unmodifiableMap(positions);
 	}
 
 	private static String[] parseLine(int line, List<String> lines, String delimiter,
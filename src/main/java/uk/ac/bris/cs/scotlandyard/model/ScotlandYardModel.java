@@ -3,7 +3,6 @@ package uk.ac.bris.cs.scotlandyard.model;
 import java.util.*;
 import java.util.function.Consumer;
 
-import uk.ac.bris.cs.gamekit.graph.Edge;
 import uk.ac.bris.cs.gamekit.graph.Graph;
 import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
 
@@ -14,8 +13,11 @@ import static uk.ac.bris.cs.scotlandyard.model.Ticket.*;
 
 public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 
+	private static final Transport[] TRANSPORTS = Transport.values();
 	List<Boolean> rounds;
 	Graph<Integer, Transport> graph;
+	NeighbourIndex neighbours;
+	private NodeSet detectiveNodes;                                             //Node indices occupied by detectives, kept in sync with their locations
 	List<ScotlandYardPlayer> players;
 	private int currentPlayerIndex = 0;
 	private int currentRound = 0;
@@ -23,6 +25,12 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 	private List<Spectator> spectators = new ArrayList<>();
 	private List<ScotlandYardPlayer> nonmrxdetectives;
 	private boolean alldetectivesmoved = false;
+	private long zobristHash;                                                   //See Zobrist, updated together with the state it covers
+	private long stateVersion = 0;                                              //Incremented on every location, ticket or round change
+	private List<Set<Move>> cachedMoves;                                        //Valid moves of each player, valid while the matching version equals stateVersion
+	private long[] cachedVersions;
+	private PersistentGameState.Game stateGame;                                 //Shared by every state handed to the players
+	private PersistentGameState.Record[] stateRecords;                          //The records of the last state, reused while a player does not change
 
 
 	public ScotlandYardModel(List<Boolean> rounds, Graph<Integer, Transport> graph,
@@ -40,6 +48,7 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 		if (graph.isEmpty()) {
 			throw new IllegalArgumentException("Empty graph");
 		}
+		neighbours = NeighbourIndex.of(graph);                                      //Neighbours grouped by transport, used for move generation
 
 		if (mrX.colour != BLACK) { // or mr.colour.isDetective()
 			throw new IllegalArgumentException("MrX should be Black");
@@ -81,6 +90,22 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 				if (p.isDetective()) nonmrxdetectives.add(p);
 			}
 		}
+
+		detectiveNodes = NodeSet.of(neighbours);
+		for (ScotlandYardPlayer p : nonmrxdetectives) occupy(p.location());
+
+		zobristHash = Zobrist.round(currentRound) ^ Zobrist.toMove(BLACK);
+		for (ScotlandYardPlayer p : players) {
+			zobristHash ^= Zobrist.location(p.colour(), p.location());
+			for (Ticket t : Ticket.values()) zobristHash ^= Zobrist.tickets(p.colour(), t, p.tickets().get(t));
+		}
+
+		cachedMoves = new ArrayList<>(Collections.nCopies(players.size(), null));
+		cachedVersions = new long[players.size()];
+		Arrays.fill(cachedVersions, -1);
+
+		stateGame = new PersistentGameState.Game(getPlayers(), rounds, graph, neighbours);
+		stateRecords = new PersistentGameState.Record[players.size()];
 	}
 
 	@Override
@@ -119,11 +144,12 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 
 		ScotlandYardPlayer currentPlayer = players.get(currentPlayerIndex);
 
-		if (!(validMoves(currentPlayer).contains(move))){
+		if (!(validMoves(currentPlayerIndex).contains(move))){
 			throw new IllegalArgumentException("Move is not valid");       //Throws an exception if the move chosen is not part of the valid moves
 		}
 
 		currentPlayerIndex = (currentPlayerIndex + 1) % players.size();    //Increments the player index. Modulus allows counter to loop back to 0(Mr X) after all detectives have moved
+		zobristHash ^= Zobrist.toMove(currentPlayer.colour()) ^ Zobrist.toMove(getCurrentPlayer());
 
 		if(currentPlayerIndex == 0){
 			alldetectivesmoved = true;
@@ -132,9 +158,11 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 
 		if(currentPlayer.colour() == BLACK){							   //The move is accepted, tickets are reduced, location updated
 			if(move instanceof DoubleMove){                                //If a double move is chosen Mr X accepts his move in a different way (See acceptDoubleMrX)
-				currentPlayer.removeTicket(DOUBLE);
+				removeTicket(currentPlayer, DOUBLE);
+				stateChanged();
 				acceptDoubleMrX(move);
-				currentPlayer.location(((DoubleMove) move).finalDestination());
+				moveTo(currentPlayer, ((DoubleMove) move).finalDestination());
+				stateChanged();
 			}else{
 				Move m;
 				if(!getRounds().get(currentRound)){
@@ -149,15 +177,17 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 					mrXLastLocation = ((TicketMove) move).destination();
 					m = move;
 				}
-				currentPlayer.removeTicket(((TicketMove) move).ticket());
-				currentPlayer.location(((TicketMove) move).destination());
+				removeTicket(currentPlayer, ((TicketMove) move).ticket());
+				moveTo(currentPlayer, ((TicketMove) move).destination());
+				stateChanged();
 				acceptMrX(m);										   //Otherwise MrX accepts normally
 			}
 		}else{
 			if(move instanceof TicketMove) {
-				currentPlayer.removeTicket(((TicketMove)move).ticket());
-				players.get(0).addTicket(((TicketMove)move).ticket());
-				currentPlayer.location(((TicketMove) move).destination());
+				removeTicket(currentPlayer, ((TicketMove)move).ticket());
+				addTicket(players.get(0), ((TicketMove)move).ticket());
+				moveTo(currentPlayer, ((TicketMove) move).destination());
+				stateChanged();
 				acceptDetective(move);										  //If the player is not Mr X they will accept the move as a detective
 			}else{
 				acceptDetective(new PassMove(move.colour()));										  //If the player is not Mr X they will accept the move as a detective
@@ -200,12 +230,25 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 
 	public void doMove(){
 		ScotlandYardPlayer player = players.get(currentPlayerIndex);
-		player.player().makeMove(this, player.location(), validMoves(player), requireNonNull(this));    //makeMove is called on the current player in the round. This will cause the accept callback to be called
+		player.player().makeMove(state(), player.location(), validMoves(currentPlayerIndex), requireNonNull(this));    //makeMove is called on the current player in the round with an immutable copy of the game. This will cause the accept callback to be called
+	}
+
+	//an immutable copy of the game for the players, sharing the records of players that did not change
+	private PersistentGameState state() {
+		for (int i = 0; i < players.size(); i++) {
+			ScotlandYardPlayer p = players.get(i);
+			if (stateRecords[i] == null || !stateRecords[i].matches(p.location(), p.tickets()))
+				stateRecords[i] = new PersistentGameState.Record(p.location(), p.tickets());
+		}
+		return new PersistentGameState(stateGame, stateRecords.clone(), currentPlayerIndex,
+				currentRound, mrXLastLocation, alldetectivesmoved);
 	}
 
 	public void acceptMrX(Move move){
 
+		zobristHash ^= Zobrist.round(currentRound) ^ Zobrist.round(currentRound + 1);
 		currentRound += 1;												  //The currentRound variable is incremented to show that MrX had made a move
+		stateChanged();
 
 		for(Spectator s : spectators){									  //All spectators will be notified of the round starting and onMoveMade will be called for each one
 			s.onRoundStarted(this, currentRound);
@@ -243,14 +286,16 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 			mrXLastLocation = Loc;
 		}
 
-		players.get(0).removeTicket(((DoubleMove) move).firstMove().ticket());
+		removeTicket(players.get(0), ((DoubleMove) move).firstMove().ticket());
+		stateChanged();
 		acceptMrX(((DoubleMove) m).firstMove());
 
 		if(getRounds().get(currentRound)){
 			mrXLastLocation = Loc;
 		}
 
-		players.get(0).removeTicket(((DoubleMove) move).secondMove().ticket());
+		removeTicket(players.get(0), ((DoubleMove) move).secondMove().ticket());
+		stateChanged();
 		acceptMrX(((DoubleMove) m).secondMove());
 	}
 
@@ -260,22 +305,55 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 		}
 	}
 
-	//return valid Moves Player can make
-	private Set<Move> validMoves(ScotlandYardPlayer x) {
-		if (x.colour() == BLACK) return mrXValidMoves(x);
-		else return detectiveValidMoves(x);
+	//the following keep the zobrist hash and detective occupancy in sync with the players
+	private void removeTicket(ScotlandYardPlayer player, Ticket ticket) {
+		zobristHash ^= Zobrist.tickets(player.colour(), ticket, player.tickets().get(ticket));
+		player.removeTicket(ticket);
+		zobristHash ^= Zobrist.tickets(player.colour(), ticket, player.tickets().get(ticket));
+	}
+
+	private void addTicket(ScotlandYardPlayer player, Ticket ticket) {
+		zobristHash ^= Zobrist.tickets(player.colour(), ticket, player.tickets().get(ticket));
+		player.addTicket(ticket);
+		zobristHash ^= Zobrist.tickets(player.colour(), ticket, player.tickets().get(ticket));
+	}
+
+	private void moveTo(ScotlandYardPlayer player, int location) {
+		zobristHash ^= Zobrist.location(player.colour(), player.location()) ^ Zobrist.location(player.colour(), location);
+		if (player.isDetective()) {
+			vacate(player.location());
+			occupy(location);
+		}
+		player.location(location);
+	}
+
+	//must be called after every location, ticket or round change so cached moves are not reused
+	private void stateChanged() {
+		stateVersion++;
+	}
+
+	//return valid Moves Player can make, reusing the set computed earlier in the same state
+	private Set<Move> validMoves(int index) {
+		if (cachedVersions[index] == stateVersion) return cachedMoves.get(index);
+		ScotlandYardPlayer x = players.get(index);
+		Set<Move> moves = x.colour() == BLACK ? mrXValidMoves(x) : detectiveValidMoves(x);
+		cachedMoves.set(index, moves);
+		cachedVersions[index] = stateVersion;
+		return moves;
 	}
 
 	// returns all valid Moves Detectives can make
 	private Set<Move> detectiveValidMoves(ScotlandYardPlayer detective) {
 		Set<Move> validmoves = new HashSet<>();
-		for (Edge<Integer, Transport> edge : graph.getEdgesFrom(graph.getNode(detective.location()))) { // looping through the list of the different egdes of the node
-			Integer nextLocation = edge.destination().value();
-			Ticket t1 = fromTransport(edge.data());                                                     //fromTransport finds the ticket for a given transport type
-			TicketMove move1 = new TicketMove(detective.colour(), t1, nextLocation);                    //creates a move
-			if (isLocationEmpty(nextLocation) || players.get(0).location() == nextLocation) {
-				if (detective.hasTickets(t1)) {
-					validmoves.add(move1);                                                              //if the current player has the ticket t1, then this is a valid move and is then added to the Set of valid moves
+		int node = neighbours.indexOf(detective.location());
+		for (Transport transport : TRANSPORTS) {
+			Ticket t1 = fromTransport(transport);                                                       //fromTransport finds the ticket for a given transport type
+			if (!detective.hasTickets(t1)) continue;                                                    //without the ticket every edge of this transport is skipped at once
+			for (int i = neighbours.start(node, transport); i < neighbours.end(node, transport); i++) {
+				int nextNode = neighbours.target(i);
+				int nextLocation = neighbours.valueOf(nextNode);
+				if (isNodeEmpty(nextNode) || players.get(0).location() == nextLocation) {
+					validmoves.add(new TicketMove(detective.colour(), t1, nextLocation));               //the current player has the ticket t1, so this is a valid move and is added to the Set of valid moves
 				}
 			}
 		}
@@ -289,46 +367,55 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 	// returns all valid Moves MrX can make
 	private Set<Move> mrXValidMoves(ScotlandYardPlayer X) {
 		Set<Move> validmoves = new HashSet<>();
-		for (Edge<Integer, Transport> x : graph.getEdgesFrom(graph.getNode(X.location()))) {
-
-			Integer nextLocation = x.destination().value();
-			Ticket t1 = fromTransport(x.data());
-			TicketMove move1 = new TicketMove(BLACK, t1, nextLocation);
-			TicketMove secretMove1 = new TicketMove(BLACK, SECRET, nextLocation);
-			if (isLocationEmpty(nextLocation)) {
+		int node = neighbours.indexOf(X.location());
+		boolean canDouble = X.hasTickets(DOUBLE) && (getCurrentRound() < (rounds.size() - 1));
+		for (Transport transport1 : TRANSPORTS) {
+			Ticket t1 = fromTransport(transport1);
+			if (!X.hasTickets(t1) && !X.hasTickets(SECRET)) continue;                             //every move along these edges needs either t1 or a secret ticket first
+			for (int x = neighbours.start(node, transport1); x < neighbours.end(node, transport1); x++) {
+
+				int nextNode = neighbours.target(x);
+				if (!isNodeEmpty(nextNode)) continue;
+				int nextLocation = neighbours.valueOf(nextNode);
+				TicketMove move1 = new TicketMove(BLACK, t1, nextLocation);
+				TicketMove secretMove1 = new TicketMove(BLACK, SECRET, nextLocation);
 				if (X.hasTickets(t1)) {
 					validmoves.add(move1);
 				}
 				if (X.hasTickets(SECRET)) {
 					validmoves.add(secretMove1);
 				}
-			}
-
-			// generates available Double Moves for mrX
 
-			for (Edge<Integer, Transport> x2 : graph.getEdgesFrom(graph.getNode(nextLocation))) { //getting the edges from nextlocation after making first move
-				Integer nextLocationDouble = x2.destination().value();
-				Ticket t2 = fromTransport(x2.data());
-				TicketMove move2 = new TicketMove(X.colour(), t2, nextLocationDouble);
-				TicketMove secretMove2 = new TicketMove(X.colour(), SECRET, nextLocationDouble);
-				if (isLocationEmpty(nextLocationDouble) && isLocationEmpty(nextLocation) && (X.hasTickets(DOUBLE)) && (getCurrentRound() < (rounds.size() - 1))) {
-					if (t2.equals(t1)) {
-						if (X.tickets().get(t2) >= 2)
+				// generates available Double Moves for mrX
+
+				if (!canDouble) continue;
+				for (Transport transport2 : TRANSPORTS) {
+					Ticket t2 = fromTransport(transport2);
+					if (!X.hasTickets(t2) && !X.hasTickets(SECRET)) continue;                     //every second move along these edges needs either t2 or a secret ticket
+					for (int x2 = neighbours.start(nextNode, transport2); x2 < neighbours.end(nextNode, transport2); x2++) { //getting the edges from nextlocation after making first move
+						int nextNodeDouble = neighbours.target(x2);
+						if (!isNodeEmpty(nextNodeDouble)) continue;
+						int nextLocationDouble = neighbours.valueOf(nextNodeDouble);
+						TicketMove move2 = new TicketMove(X.colour(), t2, nextLocationDouble);
+						TicketMove secretMove2 = new TicketMove(X.colour(), SECRET, nextLocationDouble);
+						if (t2.equals(t1)) {
+							if (X.tickets().get(t2) >= 2)
+								validmoves.add(new DoubleMove(BLACK, move1, move2));
+						}
+						else if (X.hasTickets(t2) && X.hasTickets(t1)) {
 							validmoves.add(new DoubleMove(BLACK, move1, move2));
-					}
-					else if (X.hasTickets(t2) && X.hasTickets(t1)) {
-						validmoves.add(new DoubleMove(BLACK, move1, move2));
-					}
-					if (X.hasTickets(SECRET)) {
-						if (X.hasTickets(t2)) {
-							validmoves.add(new DoubleMove(BLACK, secretMove1, move2));
 						}
-						if (X.hasTickets(t1)) {
-							validmoves.add(new DoubleMove(BLACK, move1, secretMove2));
+						if (X.hasTickets(SECRET)) {
+							if (X.hasTickets(t2)) {
+								validmoves.add(new DoubleMove(BLACK, secretMove1, move2));
+							}
+							if (X.hasTickets(t1)) {
+								validmoves.add(new DoubleMove(BLACK, move1, secretMove2));
+							}
 						}
+						if (X.tickets().get(SECRET) >= 2)
+							validmoves.add(new DoubleMove(BLACK, secretMove1, secretMove2));
 					}
-					if (X.tickets().get(SECRET) >= 2)
-						validmoves.add(new DoubleMove(BLACK, secretMove1, secretMove2));
 				}
 			}
 		}
@@ -336,13 +423,19 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 		return Collections.unmodifiableSet(validmoves);
 	}
 
-	private boolean isLocationEmpty(Integer location) {
-		for (ScotlandYardPlayer x : players) {
-			if (location == x.location() && x.isDetective()) {
-				return false;
-			}
-		}
-		return true;
+	//true if no detective is at the given node index
+	private boolean isNodeEmpty(int node) {
+		return !detectiveNodes.contains(node);
+	}
+
+	private void occupy(int location) {
+		int node = neighbours.indexOf(location);
+		if (node >= 0) detectiveNodes.add(node);                                //locations that are not on the map can never be moved to anyway
+	}
+
+	private void vacate(int location) {
+		int node = neighbours.indexOf(location);
+		if (node >= 0) detectiveNodes.remove(node);
 	}
 
 	@Override
@@ -412,21 +505,19 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 	private boolean detectivesCantMove(){
 		boolean alldetectivesstuck = true;
 
-		for(ScotlandYardPlayer x : players){
-			for(Move m : detectiveValidMoves(x)){
-				if (!(m instanceof PassMove) && x.isDetective()){
+		for(int i = 1; i < players.size(); i++){                                      //players after index 0 are the detectives
+			for(Move m : validMoves(i)){
+				if (!(m instanceof PassMove)){
 					alldetectivesstuck = false;
-
+					break;
 				}
-
 			}
-
 		}
 		return alldetectivesstuck;
 	}
 
 	private boolean mrXCantMove(){
-		if(mrXValidMoves(players.get(0)).isEmpty() && alldetectivesmoved){
+		if(alldetectivesmoved && validMoves(0).isEmpty()){
 			return true;
 		}
 		return false;
@@ -449,6 +540,14 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move> {
 		return false;
 	}
 
+	/**
+	 * @return the {@link Zobrist} hash of the current position, covering the
+	 *         actual location of Mr.X; updated incrementally on every change
+	 */
+	public long getZobristHash() {
+		return zobristHash;
+	}
+
 	@Override
 	public Colour getCurrentPlayer() {
 		return players.get(currentPlayerIndex).colour();
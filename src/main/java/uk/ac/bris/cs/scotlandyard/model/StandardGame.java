@@ -16,7 +16,6 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
 
@@ -133,17 +132,11 @@ public class StandardGame {
 	public static final int MAP_OFFSET = 60;
 
 	public static Map<Integer, Entry<Integer, Integer>> pngMapPositionEntries() throws IOException {
-		List<String> lines = readString("pos.txt");
 		Map<Integer, Entry<Integer, Integer>> map = new HashMap<>();
-		for (String line : lines) {
-			Integer[] values = Stream.of(line.split("\\s+")).map(Integer::parseInt)
-					.toArray(Integer[]::new);
-			if (values.length != 3) continue;
-			map.put(values[0],
-					new SimpleImmutableEntry<>(
-							values[1] + MAP_OFFSET,
-							values[2] + MAP_OFFSET));
-		}
+		ScotlandYardGraphReader.positionsFromLines(readString("pos.txt"))
+				.forEach((node, position) -> map.put(node, new SimpleImmutableEntry<>(
+						position.getKey() + MAP_OFFSET,
+						position.getValue() + MAP_OFFSET)));
 		return Collections.unmodifiableMap(map);
 	}
 
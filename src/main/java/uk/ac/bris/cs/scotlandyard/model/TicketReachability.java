@@ -0,0 +1,250 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.UNDERGROUND;
+
+/**
+ * Computes how many moves a player needs to reach other nodes when limited by
+ * the tickets they hold. An edge can be travelled with the ticket matching its
+ * transport (see {@link Ticket#fromTransport(Transport)}) or with a
+ * {@link Ticket#SECRET} ticket, {@link Ticket#DOUBLE} tickets are ignored.
+ *
+ * A breadth first search is run over (node, remaining tickets) states using
+ * primitive arrays only; the resulting move counts for every node are
+ * memoised per starting node and ticket counts, so repeated queries for the
+ * same player state are answered from the cache. The cache is a direct mapped
+ * table of immutable entries keyed by a packed {@code long}, so lookups take
+ * no lock and threads never wait on each other. Instances are thread safe.
+ */
+public final class TicketReachability {
+
+	/**
+	 * Move count reported when the destination cannot be reached
+	 */
+	public static final int UNREACHABLE = -1;
+
+	private static final int DEFAULT_CACHE_SIZE = 1024;
+	private static final int MAX_TICKETS = 0xFF;
+	private static final long MAX_STATES = 1L << 28;
+	private static final Transport[] TRANSPORTS = Transport.values();
+	// the ticket slot used by each transport, secret tickets are slot 3
+	private static final int SECRET_SLOT = 3;
+	private static final int[] SLOT_OF_TRANSPORT = new int[TRANSPORTS.length];
+	static {
+		for (Transport transport : TRANSPORTS) {
+			switch (Ticket.fromTransport(transport)) {
+				case TAXI: SLOT_OF_TRANSPORT[transport.ordinal()] = 0; break;
+				case BUS: SLOT_OF_TRANSPORT[transport.ordinal()] = 1; break;
+				case UNDERGROUND: SLOT_OF_TRANSPORT[transport.ordinal()] = 2; break;
+				default: SLOT_OF_TRANSPORT[transport.ordinal()] = SECRET_SLOT; break;
+			}
+		}
+	}
+
+	private final NeighbourIndex neighbours;
+	// entries are immutable, a racing reader sees either an entry or null
+	private final Entry[] cache;
+
+	/**
+	 * Creates an engine for the given map with a default cache size
+	 *
+	 * @param graph the map; not null
+	 */
+	public TicketReachability(Graph<Integer, Transport> graph) {
+		this(graph, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates an engine for the given map
+	 *
+	 * @param graph the map; not null
+	 * @param cacheSize the number of memoised searches, rounded up to a power
+	 *        of two; a search replaces the one it shares a slot with, 0
+	 *        disables the cache
+	 */
+	public TicketReachability(Graph<Integer, Transport> graph, int cacheSize) {
+		if (cacheSize < 0) throw new IllegalArgumentException("cacheSize < 0");
+		if (cacheSize > 1 << 30) throw new IllegalArgumentException("cacheSize > 2^30");
+		this.neighbours = NeighbourIndex.of(Objects.requireNonNull(graph));
+		this.cache = new Entry[cacheSize <= 1 ? cacheSize
+				: Integer.highestOneBit(cacheSize - 1) << 1];
+	}
+
+	/**
+	 * Minimum number of moves for the given player to reach the destination
+	 * with their current location and tickets
+	 *
+	 * @param player the player; not null
+	 * @param destination the destination
+	 * @return number of moves or {@link #UNREACHABLE}
+	 */
+	public int minimumMoves(ScotlandYardPlayer player, int destination) {
+		return minimumMoves(player.location(), destination, player.tickets());
+	}
+
+	/**
+	 * Minimum number of moves from source to destination with the given
+	 * tickets
+	 *
+	 * @param source the starting location
+	 * @param destination the destination
+	 * @param tickets the tickets available, missing tickets count as zero;
+	 *        not null
+	 * @return number of moves or {@link #UNREACHABLE}
+	 */
+	public int minimumMoves(int source, int destination, Map<Ticket, Integer> tickets) {
+		int index = neighbours.indexOf(destination);
+		if (index < 0) throw new IllegalArgumentException(destination + " is not on the map");
+		return moves(source, tickets)[index];
+	}
+
+	/**
+	 * All locations the given player can reach with their current location and
+	 * tickets in at most {@code k} moves, including the current location
+	 *
+	 * @param player the player; not null
+	 * @param k maximum number of moves
+	 * @return locations in ascending order; never null
+	 */
+	public int[] reachable(ScotlandYardPlayer player, int k) {
+		return reachable(player.location(), player.tickets(), k);
+	}
+
+	/**
+	 * All locations reachable from the source with the given tickets in at
+	 * most {@code k} moves, including the source
+	 *
+	 * @param source the starting location
+	 * @param tickets the tickets available, missing tickets count as zero;
+	 *        not null
+	 * @param k maximum number of moves
+	 * @return locations in ascending order; never null
+	 */
+	public int[] reachable(int source, Map<Ticket, Integer> tickets, int k) {
+		int[] moves = moves(source, tickets);
+		int[] found = new int[moves.length];
+		int count = 0;
+		for (int i = 0; i < moves.length; i++)
+			if (moves[i] != UNREACHABLE && moves[i] <= k) found[count++] = neighbours.valueOf(i);
+		int[] locations = Arrays.copyOf(found, count);
+		Arrays.sort(locations);
+		return locations;
+	}
+
+	private int[] moves(int source, Map<Ticket, Integer> tickets) {
+		Objects.requireNonNull(tickets);
+		int index = neighbours.indexOf(source);
+		if (index < 0) throw new IllegalArgumentException(source + " is not on the map");
+		int taxi = count(tickets, TAXI), bus = count(tickets, BUS),
+				underground = count(tickets, UNDERGROUND), secret = count(tickets, SECRET);
+		long key = ((long) index << 32) | ((long) taxi << 24) | (bus << 16)
+				| (underground << 8) | secret;
+		if (cache.length == 0) return search(index, new int[]{taxi, bus, underground, secret});
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (cache.length - 1);
+		Entry entry = cache[slot];
+		if (entry != null && entry.key == key) return entry.moves;
+		int[] moves = search(index, new int[]{taxi, bus, underground, secret});
+		cache[slot] = new Entry(key, moves);
+		return moves;
+	}
+
+	private static int count(Map<Ticket, Integer> tickets, Ticket ticket) {
+		Integer count = tickets.get(ticket);
+		return count == null ? 0 : Math.max(0, Math.min(MAX_TICKETS, count));
+	}
+
+	private int[] search(int source, int[] tickets) {
+		// ticket vectors are mixed radix numbers, one digit per ticket slot
+		int[] radix = new int[tickets.length];
+		int[] stride = new int[tickets.length];
+		long vectors = 1;
+		for (int slot = tickets.length - 1; slot >= 0; slot--) {
+			radix[slot] = tickets[slot] + 1;
+			stride[slot] = (int) vectors;
+			vectors *= radix[slot];
+		}
+		long states = vectors * neighbours.size();
+		if (states > MAX_STATES) throw new IllegalArgumentException(
+				"Too many tickets to search, " + states + " states required");
+
+		int[] moves = new int[neighbours.size()];
+		Arrays.fill(moves, UNREACHABLE);
+		long[] visited = new long[(int) ((states + 63) >>> 6)];
+		int start = 0;
+		for (int slot = 0; slot < tickets.length; slot++) start += tickets[slot] * stride[slot];
+
+		int[] current = new int[16], next = new int[16];
+		int currentSize = 0, nextSize;
+		current[currentSize++] = source;
+		current[currentSize++] = start;
+		visit(visited, (long) source * vectors + start);
+		moves[source] = 0;
+		int unreached = moves.length - 1;
+		for (int depth = 1; currentSize > 0 && unreached > 0; depth++) {
+			nextSize = 0;
+			for (int i = 0; i < currentSize; i += 2) {
+				int node = current[i], vector = current[i + 1];
+				int secret = digit(vector, SECRET_SLOT, stride, radix);
+				for (Transport transport : TRANSPORTS) {
+					int slot = SLOT_OF_TRANSPORT[transport.ordinal()];
+					boolean own = slot != SECRET_SLOT && digit(vector, slot, stride, radix) > 0;
+					if (!own && secret == 0) continue;
+					for (int n = neighbours.start(node, transport);
+							n < neighbours.end(node, transport); n++) {
+						int target = neighbours.target(n);
+						for (int pass = 0; pass < 2; pass++) {
+							int used = pass == 0 ? slot : SECRET_SLOT;
+							if (pass == 0 ? !own : secret == 0) continue;
+							int nextVector = vector - stride[used];
+							if (!visit(visited, (long) target * vectors + nextVector)) continue;
+							if (moves[target] == UNREACHABLE) {
+								moves[target] = depth;
+								unreached--;
+							}
+							if (nextSize + 2 > next.length) next = Arrays.copyOf(next, next.length * 2);
+							next[nextSize++] = target;
+							next[nextSize++] = nextVector;
+						}
+					}
+				}
+			}
+			int[] swap = current;
+			current = next;
+			next = swap;
+			currentSize = nextSize;
+		}
+		return moves;
+	}
+
+	private static int digit(int vector, int slot, int[] stride, int[] radix) {
+		return (vector / stride[slot]) % radix[slot];
+	}
+
+	private static boolean visit(long[] visited, long state) {
+		int word = (int) (state >>> 6);
+		long bit = 1L << state;
+		if ((visited[word] & bit) != 0) return false;
+		visited[word] |= bit;
+		return true;
+	}
+
+	private static final class Entry {
+
+		final long key;
+		final int[] moves;
+
+		Entry(long key, int[] moves) {
+			this.key = key;
+			this.moves = moves;
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Zobrist keys for hashing game positions. The hash of a position is the
+ * exclusive or of the keys of every player's location and ticket counts, the
+ * current round and the player to move, so it can be updated incrementally by
+ * xor-ing out the old key and xor-ing in the new one whenever one of them
+ * changes. {@link ScotlandYardModel#getZobristHash()} and
+ * {@link GameState#hash()} are maintained this way.
+ *
+ * Keys are derived from their inputs with a fixed mixing function instead of
+ * a random table, so hashes are the same across runs and JVMs and work for
+ * any map. Equal positions always hash the same; different positions collide
+ * with a probability of about 2^-64.
+ */
+public final class Zobrist {
+
+	private static final long LOCATION = 1;
+	private static final long TICKETS = 2;
+	private static final long ROUND = 3;
+	private static final long TO_MOVE = 4;
+	private static final int TICKET_COUNT = Ticket.values().length;
+
+	private Zobrist() {}
+
+	/**
+	 * @return the key of a player being at the given location
+	 */
+	public static long location(Colour colour, int location) {
+		return location(colour.ordinal(), location);
+	}
+
+	/**
+	 * @return the key of a player holding {@code count} of the given ticket
+	 */
+	public static long tickets(Colour colour, Ticket ticket, int count) {
+		return tickets(colour.ordinal(), ticket.ordinal(), count);
+	}
+
+	/**
+	 * @return the key of the current round
+	 */
+	public static long round(int round) {
+		return key(ROUND, 0, round);
+	}
+
+	/**
+	 * @return the key of the given player being the one to move
+	 */
+	public static long toMove(Colour colour) {
+		return toMove(colour.ordinal());
+	}
+
+	static long location(int colour, int location) {
+		return key(LOCATION, colour, location);
+	}
+
+	static long tickets(int colour, int ticket, int count) {
+		return key(TICKETS, colour * TICKET_COUNT + ticket, count);
+	}
+
+	static long toMove(int colour) {
+		return key(TO_MOVE, colour, 0);
+	}
+
+	/**
+	 * Computes the hash of a position from scratch. As Mr.X's location is
+	 * hidden in the view it has to be given separately.
+	 *
+	 * @param view the game; not null
+	 * @param mrXLocation the actual location of Mr.X
+	 * @return the hash
+	 */
+	public static long hash(ScotlandYardView view, int mrXLocation) {
+		Objects.requireNonNull(view);
+		List<Colour> players = view.getPlayers();
+		long hash = round(view.getCurrentRound()) ^ toMove(view.getCurrentPlayer());
+		for (Colour colour : players) {
+			int location = colour.isMrX() ? mrXLocation : view.getPlayerLocation(colour).orElse(0);
+			hash ^= location(colour, location);
+			for (Ticket ticket : Ticket.values())
+				hash ^= tickets(colour, ticket, view.getPlayerTickets(colour, ticket).orElse(0));
+		}
+		return hash;
+	}
+
+	// distinct inputs give distinct keys as the mixing function is a bijection
+	private static long key(long kind, int what, int value) {
+		return mix((kind << 56) ^ ((long) what << 32) ^ (value & 0xFFFFFFFFL));
+	}
+
+	// the finaliser of SplitMix64
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
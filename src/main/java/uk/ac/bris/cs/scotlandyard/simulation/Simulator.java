@@ -0,0 +1,437 @@
+package uk.ac.bris.cs.scotlandyard.simulation;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javafx.geometry.Point2D;
+import javafx.scene.image.Image;
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
+import uk.ac.bris.cs.gamekit.graph.Node;
+import uk.ac.bris.cs.scotlandyard.ai.AI;
+import uk.ac.bris.cs.scotlandyard.ai.PlayerFactory;
+import uk.ac.bris.cs.scotlandyard.ai.ResourceProvider;
+import uk.ac.bris.cs.scotlandyard.ai.Visualiser;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.GameLoop;
+import uk.ac.bris.cs.scotlandyard.model.ModelFactories;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.PullPlayer;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGame;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGameFactory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+import uk.ac.bris.cs.scotlandyard.model.StandardGame;
+import uk.ac.bris.cs.scotlandyard.model.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * Plays games between {@link PlayerFactory} AIs without any UI.
+ *
+ * Every game gets new factory instances, set up the same way
+ * {@link uk.ac.bris.cs.scotlandyard.ai.AIPool} does it: spectators are
+ * registered, {@link PlayerFactory#ready(Visualiser, ResourceProvider)} is
+ * called and {@link PlayerFactory#finish()} once the game is over. Players run
+ * on the thread that calls {@link #play(int)} through a {@link GameLoop}, so
+ * the call stack does not grow with the game and a game is only as fast as
+ * its AIs; images, node coordinates and the visualiser are not available.
+ * Games share nothing but the immutable map and its distance tables, so
+ * {@link #play(int)} may be called from several threads at once (see
+ * {@link Tournament}).
+ *
+ * Starting locations come from {@link StandardGame#generateMrXLocation(int)}
+ * and {@link StandardGame#generateDetectiveLocations(int, int)}, or on a map
+ * given to {@link Builder#graph(Graph)} are drawn from the map's own nodes,
+ * so the same seed always gives the same game setup:
+ *
+ * <pre>
+ * Simulator simulator = new Simulator.Builder(MonteCarloAI::new, AlphaBetaAI::new)
+ * 		.detectives(5).build();
+ * List&lt;Simulator.Result&gt; results = simulator.play(0, 1000);
+ * </pre>
+ */
+public final class Simulator {
+
+	private final Supplier<? extends PlayerFactory> mrX;
+	private final Supplier<? extends PlayerFactory> detectives;
+	private final Graph<Integer, Transport> graph;
+	// the nodes starting locations are drawn from, null for the standard pools
+	private final List<Integer> nodes;
+	private final List<Boolean> rounds;
+	private final int detectiveCount;
+	private final ScotlandYardGameFactory gameFactory;
+	private final Duration moveTimeout;
+
+	private Simulator(Builder builder, Graph<Integer, Transport> graph, List<Integer> nodes) {
+		this.mrX = builder.mrX;
+		this.detectives = builder.detectives;
+		this.graph = graph;
+		this.nodes = nodes;
+		this.rounds = builder.rounds;
+		this.detectiveCount = builder.detectiveCount;
+		this.gameFactory = builder.gameFactory;
+		this.moveTimeout = builder.moveTimeout;
+	}
+
+	/**
+	 * @return the map games are played on; never null
+	 */
+	public Graph<Integer, Transport> graph() {
+		return graph;
+	}
+
+	/**
+	 * Plays games with consecutive seeds one after the other
+	 *
+	 * @param firstSeed the seed of the first game
+	 * @param games the number of games; not negative
+	 * @return the results in seed order; never null
+	 */
+	public List<Result> play(int firstSeed, int games) {
+		if (games < 0) throw new IllegalArgumentException("games < 0");
+		List<Result> results = new ArrayList<>(games);
+		for (int i = 0; i < games; i++) results.add(play(firstSeed + i));
+		return results;
+	}
+
+	/**
+	 * Plays one game to completion
+	 *
+	 * @param seed the seed of the starting locations
+	 * @return the result; never null
+	 */
+	public Result play(int seed) {
+		long start = System.nanoTime();
+		List<Colour> colours = new ArrayList<>();
+		colours.add(Colour.BLACK);
+		for (Colour colour : Colour.values())
+			if (colour.isDetective() && colours.size() <= detectiveCount) colours.add(colour);
+		List<Integer> locations = startingLocations(seed);
+
+		Map<Colour, Seat> seats = new EnumMap<>(Colour.class);
+		GameLoop.Builder builder = new GameLoop.Builder(rounds, graph).gameFactory(gameFactory);
+		for (int i = 0; i < colours.size(); i++) {
+			Colour colour = colours.get(i);
+			Seat seat = new Seat();
+			seats.put(colour, seat);
+			builder.player(colour, PullPlayer.fromPlayer(seat),
+					colour.isMrX() ? StandardGame.generateMrXTickets()
+							: StandardGame.generateDetectiveTickets(),
+					locations.get(i));
+		}
+		GameLoop loop = builder.build();
+		ScotlandYardGame game = loop.game();
+
+		PlayerFactory mrXFactory = mrX.get();
+		PlayerFactory detectiveFactory = detectives.get();
+		try {
+			ResourceProvider resources = new HeadlessResources(graph, moveTimeout);
+			for (PlayerFactory factory : Arrays.asList(mrXFactory, detectiveFactory)) {
+				factory.createSpectators(game).forEach(game::registerSpectator);
+				factory.ready(HEADLESS_VISUALISER, resources);
+			}
+			seats.forEach((colour, seat) -> seat.player = (colour.isMrX() ? mrXFactory
+					: detectiveFactory).createPlayer(colour));
+
+			Set<Colour> winners = loop.run();
+			int moves = 0;
+			for (Seat seat : seats.values()) moves += seat.moves;
+			return new Result(seed, winners, game.getCurrentRound(), moves,
+					System.nanoTime() - start);
+		} finally {
+			mrXFactory.finish();
+			detectiveFactory.finish();
+		}
+	}
+
+	// Mr.X's location followed by those of the detectives, all different
+	private List<Integer> startingLocations(int seed) {
+		List<Integer> locations = new ArrayList<>();
+		if (nodes == null) {
+			locations.add(StandardGame.generateMrXLocation(seed));
+			locations.addAll(StandardGame.generateDetectiveLocations(seed, detectiveCount));
+		} else {
+			List<Integer> shuffled = new ArrayList<>(nodes);
+			Collections.shuffle(shuffled, new Random(seed));
+			locations.addAll(shuffled.subList(0, detectiveCount + 1));
+		}
+		return locations;
+	}
+
+	/**
+	 * Runs games from the command line:
+	 * {@code <Mr.X AI> <detective AI> [games] [detectives] [first seed]}, where
+	 * AIs are given by their {@link uk.ac.bris.cs.scotlandyard.ai.ManagedAI}
+	 * name
+	 *
+	 * @param args the arguments
+	 * @throws IOException if the standard map cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: Simulator <Mr.X AI> <detective AI> "
+					+ "[games=100] [detectives=5] [first seed=0]");
+			System.exit(1);
+		}
+		List<AI> ais = AI.scanClasspath();
+		Simulator simulator = new Builder(findAI(ais, args[0])::instantiate,
+				findAI(ais, args[1])::instantiate)
+				.detectives(args.length > 3 ? Integer.parseInt(args[3]) : 5)
+				.build();
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int firstSeed = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+		long start = System.nanoTime();
+		int mrXWins = 0;
+		for (int i = 0; i < games; i++) {
+			Result result = simulator.play(firstSeed + i);
+			if (result.mrXWins()) mrXWins++;
+			System.out.println(result);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games, Mr.X won %d (%.1f%%), %.0f games/hour%n", games, mrXWins,
+				games == 0 ? 0 : 100.0 * mrXWins / games, seconds == 0 ? 0 : games * 3600 / seconds);
+	}
+
+	static AI findAI(List<AI> ais, String name) {
+		for (AI ai : ais) if (ai.getName().equals(name)) return ai;
+		throw new IllegalArgumentException("No AI named " + name);
+	}
+
+	/**
+	 * The outcome of one game
+	 */
+	public static final class Result {
+
+		private final int seed;
+		private final Set<Colour> winners;
+		private final int rounds;
+		private final int moves;
+		private final long nanos;
+
+		Result(int seed, Set<Colour> winners, int rounds, int moves, long nanos) {
+			this.seed = seed;
+			this.winners = requireNonNull(winners);
+			this.rounds = rounds;
+			this.moves = moves;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the seed of the starting locations
+		 */
+		public int seed() {
+			return seed;
+		}
+
+		/**
+		 * @return the winning players; never null
+		 */
+		public Set<Colour> winners() {
+			return winners;
+		}
+
+		/**
+		 * @return whether Mr.X won
+		 */
+		public boolean mrXWins() {
+			return winners.contains(Colour.BLACK);
+		}
+
+		/**
+		 * @return the round the game ended in
+		 */
+		public int rounds() {
+			return rounds;
+		}
+
+		/**
+		 * @return the number of moves made by all players, a double move
+		 *         counts once
+		 */
+		public int moves() {
+			return moves;
+		}
+
+		/**
+		 * @return the wall clock time of the game
+		 */
+		public Duration duration() {
+			return Duration.ofNanos(nanos);
+		}
+
+		@Override
+		public String toString() {
+			return "Result{seed=" + seed + ", winners=" + winners + ", rounds=" + rounds
+					+ ", moves=" + moves + ", duration=" + duration().toMillis() + "ms}";
+		}
+	}
+
+	/**
+	 * Builds a {@link Simulator}. By default games use the standard map and
+	 * rounds, five detectives, {@link ModelFactories.ImperativeModelFactory}
+	 * and no move timeout.
+	 */
+	public static class Builder {
+
+		private final Supplier<? extends PlayerFactory> mrX;
+		private final Supplier<? extends PlayerFactory> detectives;
+		private Graph<Integer, Transport> graph;
+		private List<Boolean> rounds = StandardGame.ROUNDS;
+		private int detectiveCount = 5;
+		private ScotlandYardGameFactory gameFactory = new ModelFactories.ImperativeModelFactory();
+		private Duration moveTimeout;
+
+		/**
+		 * @param mrX creates the AI of Mr.X, called once per game; not null
+		 * @param detectives creates the AI of all detectives, called once per
+		 *        game; not null
+		 */
+		public Builder(Supplier<? extends PlayerFactory> mrX,
+				Supplier<? extends PlayerFactory> detectives) {
+			this.mrX = requireNonNull(mrX);
+			this.detectives = requireNonNull(detectives);
+		}
+
+		/**
+		 * @param graph the map, starting locations are drawn from all of its
+		 *        nodes rather than the pools of the standard map; not null
+		 * @return this builder
+		 */
+		public Builder graph(Graph<Integer, Transport> graph) {
+			this.graph = requireNonNull(graph);
+			return this;
+		}
+
+		/**
+		 * @param rounds the rounds and whether Mr.X is revealed in each; not
+		 *        null
+		 * @return this builder
+		 */
+		public Builder rounds(List<Boolean> rounds) {
+			this.rounds = requireNonNull(rounds);
+			return this;
+		}
+
+		/**
+		 * @param count the number of detectives, between 1 and 5
+		 * @return this builder
+		 */
+		public Builder detectives(int count) {
+			if (count < 1 || count > 5)
+				throw new IllegalArgumentException("detectives must be between 1 and 5");
+			this.detectiveCount = count;
+			return this;
+		}
+
+		/**
+		 * @param gameFactory creates the model of every game; not null
+		 * @return this builder
+		 */
+		public Builder gameFactory(ScotlandYardGameFactory gameFactory) {
+			this.gameFactory = requireNonNull(gameFactory);
+			return this;
+		}
+
+		/**
+		 * @param moveTimeout the move timeout reported to the AIs by
+		 *        {@link ResourceProvider#getMoveTimeout()}; not null
+		 * @return this builder
+		 */
+		public Builder moveTimeout(Duration moveTimeout) {
+			this.moveTimeout = requireNonNull(moveTimeout);
+			return this;
+		}
+
+		/**
+		 * @return the simulator; never null
+		 * @throws IOException if no graph was given and the standard map
+		 *         cannot be read
+		 * @throws IllegalArgumentException if the given graph has fewer nodes
+		 *         than there are players
+		 */
+		public Simulator build() throws IOException {
+			List<Integer> nodes = null;
+			if (graph != null) {
+				nodes = new ArrayList<>();
+				for (Node<Integer> node : graph.getNodes()) nodes.add(node.value());
+				nodes.sort(null);
+				if (nodes.size() <= detectiveCount)
+					throw new IllegalArgumentException("The map has fewer nodes than players");
+			}
+			Graph<Integer, Transport> map = graph != null ? graph : StandardGame.standardGraph();
+			// a compact map caches its distance tables for every game to share
+			return new Simulator(this,
+					new ImmutableGraph<>(CompactGraph.copyOf(map, Transport.class)), nodes);
+		}
+	}
+
+	// forwards to the AI's player, which only exists once the game is set up
+	private static final class Seat implements Player {
+
+		Player player;
+		int moves;
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves,
+				Consumer<Move> callback) {
+			this.moves++;
+			player.makeMove(view, location, moves, callback);
+		}
+	}
+
+	private static final Visualiser HEADLESS_VISUALISER = () -> {
+		throw new UnsupportedOperationException("No visualiser in a headless game");
+	};
+
+	private static final class HeadlessResources implements ResourceProvider {
+
+		private final Graph<Integer, Transport> graph;
+		private final Duration moveTimeout;
+
+		HeadlessResources(Graph<Integer, Transport> graph, Duration moveTimeout) {
+			this.graph = graph;
+			this.moveTimeout = moveTimeout;
+		}
+
+		@Override
+		public Image getMap() {
+			throw new UnsupportedOperationException("No images in a headless game");
+		}
+
+		@Override
+		public Image getTicket(Ticket ticket) {
+			throw new UnsupportedOperationException("No images in a headless game");
+		}
+
+		@Override
+		public Graph<Integer, Transport> getGraph() {
+			return graph;
+		}
+
+		@Override
+		public Optional<Duration> getMoveTimeout() {
+			return Optional.ofNullable(moveTimeout);
+		}
+
+		@Override
+		public Point2D coordinateAtNode(int node) {
+			throw new UnsupportedOperationException("No coordinates in a headless game");
+		}
+	}
+
+}
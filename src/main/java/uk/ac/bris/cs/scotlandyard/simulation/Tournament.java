@@ -0,0 +1,218 @@
+package uk.ac.bris.cs.scotlandyard.simulation;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.ac.bris.cs.scotlandyard.ai.AI;
+
+/**
+ * Plays many independent games of a {@link Simulator} on a pool of threads.
+ *
+ * Every worker repeatedly takes the next seed and plays that game to the end
+ * on its own thread with its own model and AI instances, so the synchronous
+ * callbacks of the model never cross threads and throughput grows with the
+ * number of cores. Only the immutable map and its distance tables are shared.
+ * AIs that search on several threads themselves should be limited to one
+ * thread each, e.g. {@code () -> new MonteCarloAI(budget, 1)}.
+ */
+public final class Tournament {
+
+	/**
+	 * The normal quantile of the 95% confidence intervals
+	 */
+	private static final double Z = 1.959964;
+
+	private final Simulator simulator;
+	private final int threads;
+
+	/**
+	 * Creates a tournament
+	 *
+	 * @param simulator plays the games; not null
+	 * @param threads the number of games played at once; at least 1
+	 */
+	public Tournament(Simulator simulator, int threads) {
+		this.simulator = requireNonNull(simulator);
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.threads = threads;
+	}
+
+	/**
+	 * Plays games with consecutive seeds
+	 *
+	 * @param firstSeed the seed of the first game
+	 * @param games the number of games; not negative
+	 * @return the standings; never null
+	 * @throws RuntimeException if a game fails, the remaining games are
+	 *         cancelled
+	 */
+	public Standings run(int firstSeed, int games) {
+		if (games < 0) throw new IllegalArgumentException("games < 0");
+		long start = System.nanoTime();
+		Simulator.Result[] results = new Simulator.Result[games];
+		AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(threads, Math.max(1, games));
+		ExecutorService service = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "tournament-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < workers; i++)
+				futures.add(service.submit(() -> {
+					for (int game; (game = next.getAndIncrement()) < games; )
+						results[game] = simulator.play(firstSeed + game);
+				}));
+			for (Future<?> future : futures) future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			service.shutdownNow();
+		}
+		return new Standings(Arrays.asList(results), System.nanoTime() - start);
+	}
+
+	/**
+	 * Runs a tournament from the command line:
+	 * {@code <Mr.X AI> <detective AI> [games] [threads] [detectives] [first seed]},
+	 * where AIs are given by their
+	 * {@link uk.ac.bris.cs.scotlandyard.ai.ManagedAI} name
+	 *
+	 * @param args the arguments
+	 * @throws IOException if the standard map cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: Tournament <Mr.X AI> <detective AI> [games=1000] "
+					+ "[threads=cores] [detectives=5] [first seed=0]");
+			System.exit(1);
+		}
+		List<AI> ais = AI.scanClasspath();
+		Simulator simulator = new Simulator.Builder(Simulator.findAI(ais, args[0])::instantiate,
+				Simulator.findAI(ais, args[1])::instantiate)
+				.detectives(args.length > 4 ? Integer.parseInt(args[4]) : 5)
+				.build();
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3])
+				: Runtime.getRuntime().availableProcessors();
+		int firstSeed = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+		System.out.println(new Tournament(simulator, threads).run(firstSeed, games));
+	}
+
+	/**
+	 * The aggregated results of a tournament
+	 */
+	public static final class Standings {
+
+		private final List<Simulator.Result> results;
+		private final int mrXWins;
+		private final long nanos;
+
+		Standings(List<Simulator.Result> results, long nanos) {
+			this.results = Collections.unmodifiableList(results);
+			this.nanos = nanos;
+			int wins = 0;
+			for (Simulator.Result result : results) if (result.mrXWins()) wins++;
+			this.mrXWins = wins;
+		}
+
+		/**
+		 * @return the result of every game in seed order; never null
+		 */
+		public List<Simulator.Result> results() {
+			return results;
+		}
+
+		/**
+		 * @return the number of games played
+		 */
+		public int games() {
+			return results.size();
+		}
+
+		/**
+		 * @return the number of games Mr.X won
+		 */
+		public int mrXWins() {
+			return mrXWins;
+		}
+
+		/**
+		 * @return the number of games the detectives won
+		 */
+		public int detectiveWins() {
+			return games() - mrXWins;
+		}
+
+		/**
+		 * @return the fraction of games Mr.X won, 0 if no games were played
+		 */
+		public double mrXWinRate() {
+			return games() == 0 ? 0 : (double) mrXWins / games();
+		}
+
+		/**
+		 * @return the lower end of the 95% Wilson score interval of
+		 *         {@link #mrXWinRate()}
+		 */
+		public double mrXWinRateLower() {
+			return wilson(-1);
+		}
+
+		/**
+		 * @return the upper end of the 95% Wilson score interval of
+		 *         {@link #mrXWinRate()}
+		 */
+		public double mrXWinRateUpper() {
+			return wilson(1);
+		}
+
+		// the Wilson interval stays within [0, 1] even for very high or low rates
+		private double wilson(int sign) {
+			int n = games();
+			if (n == 0) return sign < 0 ? 0 : 1;
+			double p = mrXWinRate();
+			double centre = p + Z * Z / (2 * n);
+			double spread = Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4.0 * n * n));
+			return (centre + sign * spread) / (1 + Z * Z / n);
+		}
+
+		/**
+		 * @return the wall clock time of the tournament
+		 */
+		public Duration duration() {
+			return Duration.ofNanos(nanos);
+		}
+
+		/**
+		 * @return games finished per hour of wall clock time
+		 */
+		public double gamesPerHour() {
+			return nanos == 0 ? 0 : games() * 3600e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d games, Mr.X won %d (%.1f%%, 95%% CI %.1f%%-%.1f%%), "
+							+ "detectives won %d, %.0f games/hour",
+					games(), mrXWins, 100 * mrXWinRate(), 100 * mrXWinRateLower(),
+					100 * mrXWinRateUpper(), detectiveWins(), gamesPerHour());
+		}
+	}
+
+}
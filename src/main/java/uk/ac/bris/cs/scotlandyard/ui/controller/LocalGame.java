@@ -158,7 +158,7 @@ public final class LocalGame extends BaseGame implements Spectator {
 					status,
 					this);
 
-			pool.initialise(resourceManager, model);
+			pool.initialise(resourceManager, model, setup.timeoutProperty().get());
 			// Add all players to board
 			for (PlayerProperty property : joining) {
 				board.setBoardPlayer(property.colour(),
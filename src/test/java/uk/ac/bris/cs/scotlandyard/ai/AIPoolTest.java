@@ -0,0 +1,92 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.TicketMove;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that {@link AIPool} commits a move at the deadline and interrupts
+ * the AI, whichever {@link AIPool.Execution} it runs on
+ */
+public class AIPoolTest {
+
+	private static final Move FIRST = new TicketMove(Colour.BLACK, Ticket.TAXI, 8);
+	private static final Move OFFERED = new TicketMove(Colour.BLACK, Ticket.BUS, 58);
+	private static final Set<Move> MOVES = new LinkedHashSet<>(asList(FIRST, OFFERED));
+
+	@Test
+	public void testAIOnSharedExecutionIsInterruptedAtDeadline() throws InterruptedException {
+		CountDownLatch interrupted = new CountDownLatch(1);
+		Player slow = (view, location, moves, callback) -> {
+			AnytimeCallback.offer(callback, OFFERED);
+			try {
+				Thread.sleep(10_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			callback.accept(FIRST);
+		};
+		BlockingQueue<Move> committed = new LinkedBlockingQueue<>();
+		player(slow, AIPool.Execution.shared().open()).makeMove(null, 45, MOVES, committed::add);
+
+		assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(committed.poll(5, TimeUnit.SECONDS)).isEqualTo(OFFERED);
+		// the late move of the AI is ignored
+		assertThat(committed.poll(100, TimeUnit.MILLISECONDS)).isNull();
+	}
+
+	@Test
+	public void testCommitDoesNotWaitForBusyExecution() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		// holds the only thread of the game's executor and ignores interrupts
+		Player stubborn = (view, location, moves, callback) -> {
+			while (true) {
+				try {
+					if (release.await(10, TimeUnit.SECONDS)) return;
+				} catch (InterruptedException ignored) {}
+			}
+		};
+		AIPool.Execution execution = AIPool.Execution.perGame(1);
+		ExecutorService service = execution.open();
+		try {
+			BlockingQueue<Move> committed = new LinkedBlockingQueue<>();
+			player(stubborn, service).makeMove(null, 45, MOVES, committed::add);
+
+			assertThat(committed.poll(2, TimeUnit.SECONDS)).isEqualTo(FIRST);
+		} finally {
+			release.countDown();
+			execution.close(service);
+		}
+	}
+
+	@Test
+	public void testMoveInTimeIsNotReplaced() throws InterruptedException {
+		BlockingQueue<Move> committed = new LinkedBlockingQueue<>();
+		player((view, location, moves, callback) -> callback.accept(FIRST),
+				AIPool.Execution.shared().open()).makeMove(null, 45, MOVES, committed::add);
+
+		assertThat(committed.poll(5, TimeUnit.SECONDS)).isEqualTo(FIRST);
+		assertThat(committed.poll(200, TimeUnit.MILLISECONDS)).isNull();
+	}
+
+	private static Player player(Player ai, ExecutorService service) {
+		return new AIPool.ThreadedPlayer(ai, service, Duration.ofMillis(50), Throwable::printStackTrace);
+	}
+
+}
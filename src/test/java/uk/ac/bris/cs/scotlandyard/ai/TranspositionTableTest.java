@@ -0,0 +1,134 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link TranspositionTable}
+ */
+public class TranspositionTableTest {
+
+	// keys 4, 5 and 4 + 2^32 all map to the bucket of the first two entries
+	private static final long FIRST = 4;
+	private static final long SECOND = 5;
+	private static final long THIRD = 4 | (1L << 32);
+
+	private static final long MOVE = PackedMove.ticket(Colour.BLACK, Ticket.SECRET, 108);
+
+	@Test
+	public void testStoreAndProbeRoundTrip() {
+		TranspositionTable table = new TranspositionTable(1);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		assertThat(table.probe(0x1234_5678_9ABCL, entry)).isFalse();
+
+		table.store(0x1234_5678_9ABCL, 7, TranspositionTable.LOWER, -1234, MOVE);
+		assertThat(table.probe(0x1234_5678_9ABCL, entry)).isTrue();
+		assertThat(entry.depth).isEqualTo(7);
+		assertThat(entry.bound).isEqualTo(TranspositionTable.LOWER);
+		assertThat(entry.score).isEqualTo(-1234);
+		assertThat(entry.move).isEqualTo(MOVE);
+
+		// the same key is overwritten in place
+		table.store(0x1234_5678_9ABCL, 2, TranspositionTable.EXACT, 99, 0);
+		assertThat(table.probe(0x1234_5678_9ABCL, entry)).isTrue();
+		assertThat(entry.depth).isEqualTo(2);
+		assertThat(entry.score).isEqualTo(99);
+
+		table.clear();
+		assertThat(table.probe(0x1234_5678_9ABCL, entry)).isFalse();
+	}
+
+	@Test
+	public void testShallowerEntryIsReplacedWithinBucket() {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(FIRST, 5, TranspositionTable.EXACT, 1, MOVE);
+		table.store(SECOND, 2, TranspositionTable.EXACT, 2, MOVE);
+		table.store(THIRD, 3, TranspositionTable.EXACT, 3, MOVE);
+		assertThat(found(table, FIRST, SECOND, THIRD)).isEqualTo(new boolean[]{true, false, true});
+	}
+
+	@Test
+	public void testEntryFromOlderSearchIsReplacedFirst() {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(FIRST, 5, TranspositionTable.EXACT, 1, MOVE);
+		table.store(THIRD, 3, TranspositionTable.EXACT, 3, MOVE);
+		table.newSearch();
+		// both are stale, so the shallower one goes
+		table.store(SECOND, 1, TranspositionTable.EXACT, 2, MOVE);
+		assertThat(found(table, FIRST, SECOND, THIRD)).isEqualTo(new boolean[]{true, true, false});
+		// the deeper stale entry goes before the shallow current one
+		table.store(THIRD, 3, TranspositionTable.EXACT, 3, MOVE);
+		assertThat(found(table, FIRST, SECOND, THIRD)).isEqualTo(new boolean[]{false, true, true});
+	}
+
+	@Test
+	public void testTornEntryIsRejected() throws ReflectiveOperationException {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(FIRST, 5, TranspositionTable.EXACT, 1, MOVE);
+		long[] words = words(table);
+		int offset = -1;
+		for (int i = 0; i < words.length; i += 3)
+			if (words[i + 2] == MOVE) offset = i;
+		assertThat(offset >= 0).isTrue();
+
+		// another writer's data lands between this entry's check word and move
+		words[offset + 1] ^= 0xFF;
+		assertThat(table.probe(FIRST, new TranspositionTable.Entry())).isFalse();
+	}
+
+	@Test
+	public void testInvalidDepthOrBoundShouldThrow() {
+		TranspositionTable table = new TranspositionTable(1);
+		assertThatThrownBy(() -> table.store(FIRST, 256, TranspositionTable.EXACT, 0, MOVE))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> table.store(FIRST, 1, 3, 0, MOVE))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TranspositionTable(0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testPoolKeepsOnlyAFewTablesOfEachSize() {
+		List<TranspositionTable> released = new ArrayList<>();
+		for (int i = 0; i < 4; i++) released.add(new TranspositionTable(3));
+		released.get(0).store(FIRST, 5, TranspositionTable.EXACT, 1, MOVE);
+		for (TranspositionTable table : released) table.release();
+		released.get(0).release();
+
+		Set<TranspositionTable> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < released.size(); i++) {
+			TranspositionTable table = TranspositionTable.acquire(3);
+			assertThat(table.probe(FIRST, new TranspositionTable.Entry())).isFalse();
+			if (released.contains(table)) reused.add(table);
+		}
+		assertThat(reused).hasSize(2);
+	}
+
+	private static boolean[] found(TranspositionTable table, long... keys) {
+		boolean[] found = new boolean[keys.length];
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		for (int i = 0; i < keys.length; i++) found[i] = table.probe(keys[i], entry);
+		return found;
+	}
+
+	// the flat entry array, torn writes cannot be produced through the API
+	private static long[] words(TranspositionTable table) throws ReflectiveOperationException {
+		Field field = TranspositionTable.class.getDeclaredField("table");
+		field.setAccessible(true);
+		return (long[]) field.get(table);
+	}
+
+}
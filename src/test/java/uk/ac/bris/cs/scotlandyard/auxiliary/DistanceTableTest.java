@@ -0,0 +1,100 @@
+package uk.ac.bris.cs.scotlandyard.auxiliary;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.model.StandardGame;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link DistanceTable}
+ */
+public class DistanceTableTest {
+
+	@Test
+	public void testStandardGraphMatchesBreadthFirstSearch() throws IOException {
+		CompactGraph<Transport> graph =
+				CompactGraph.copyOf(StandardGame.standardGraph(), Transport.class);
+		assertMatchesSearch(graph, EnumSet.allOf(Transport.class));
+		assertMatchesSearch(graph, EnumSet.of(Transport.TAXI));
+		assertMatchesSearch(graph, EnumSet.of(Transport.BUS, Transport.UNDERGROUND));
+		assertMatchesSearch(graph, EnumSet.of(Transport.FERRY));
+	}
+
+	@Test
+	public void testRestrictedTransportLeavesNodesUnreachable() {
+		// 1 -taxi- 2 -bus- 3, 4 on its own
+		CompactGraph<Transport> graph = new CompactGraph.Builder<>(Transport.class)
+				.addNode(1).addNode(2).addNode(3).addNode(4)
+				.addEdge(1, 2, Transport.TAXI)
+				.addEdge(2, 3, Transport.BUS)
+				.build();
+		DistanceTable<Transport> all = DistanceTable.of(graph);
+		assertThat(all.distanceBetween(1, 3)).isEqualTo(2);
+		assertThat(all.distanceBetween(3, 1)).isEqualTo(2);
+		assertThat(all.distanceBetween(2, 2)).isZero();
+		assertThat(all.distanceBetween(1, 4)).isEqualTo(DistanceTable.UNREACHABLE);
+
+		DistanceTable<Transport> taxi = DistanceTable.of(graph, EnumSet.of(Transport.TAXI));
+		assertThat(taxi.distanceBetween(1, 2)).isEqualTo(1);
+		assertThat(taxi.distanceBetween(1, 3)).isEqualTo(DistanceTable.UNREACHABLE);
+		assertThat(taxi.distanceBetween(3, 3)).isZero();
+	}
+
+	@Test
+	public void testCachedTableIsShared() {
+		CompactGraph<Transport> graph = new CompactGraph.Builder<>(Transport.class)
+				.addNode(1).addNode(2).addEdge(1, 2, Transport.TAXI).build();
+		DistanceTable<Transport> table = DistanceTable.cached(graph, EnumSet.of(Transport.TAXI));
+		assertThat(DistanceTable.cached(graph, EnumSet.of(Transport.TAXI))).isSameAs(table);
+		assertThat(DistanceTable.cached(graph, EnumSet.of(Transport.BUS)) == table).isFalse();
+	}
+
+	@Test
+	public void testUnknownNodeShouldThrow() {
+		CompactGraph<Transport> graph = new CompactGraph.Builder<>(Transport.class)
+				.addNode(1).build();
+		assertThatThrownBy(() -> DistanceTable.of(graph).distanceBetween(1, 2))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static void assertMatchesSearch(CompactGraph<Transport> graph, Set<Transport> allowed) {
+		DistanceTable<Transport> table = DistanceTable.of(graph, allowed);
+		for (int source = 0; source < graph.size(); source++) {
+			int[] expected = search(graph, allowed, source);
+			for (int destination = 0; destination < graph.size(); destination++)
+				assertThat(table.distance(source, destination)).isEqualTo(expected[destination]);
+		}
+	}
+
+	private static int[] search(CompactGraph<Transport> graph, Set<Transport> allowed,
+			int source) {
+		int[] distances = new int[graph.size()];
+		Arrays.fill(distances, DistanceTable.UNREACHABLE);
+		Deque<Integer> queue = new ArrayDeque<>();
+		distances[source] = 0;
+		queue.add(source);
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+				int target = graph.edgeTarget(e);
+				if (!allowed.contains(graph.edgeData(e)) || distances[target] >= 0) continue;
+				distances[target] = distances[node] + 1;
+				queue.add(target);
+			}
+		}
+		return distances;
+	}
+
+}
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.auxiliary;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.Node;
+import uk.ac.bris.cs.scotlandyard.model.MapGenerator;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYardGraphReader.fromLines;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYardGraphReader.positionsFromLines;
+
+/**
+ * Tests for {@link MapGenerator}
+ */
+public class MapGeneratorTest {
+
+	@Test
+	public void testSameSeedGivesSameMap() {
+		MapGenerator map = new MapGenerator.Builder(1000).seed(7).build();
+		MapGenerator same = new MapGenerator.Builder(1000).seed(7).build();
+		MapGenerator other = new MapGenerator.Builder(1000).seed(8).build();
+		assertThat(same.graphLines()).isEqualTo(map.graphLines());
+		assertThat(same.positionLines()).isEqualTo(map.positionLines());
+		assertThat(other.graphLines().equals(map.graphLines())).isFalse();
+	}
+
+	@Test
+	public void testLinesMatchGraph() {
+		MapGenerator map = new MapGenerator.Builder(1000).build();
+		assertThat(fromLines(map.graphLines())).isEqualTo(map.graph());
+		assertThat(positionsFromLines(map.positionLines()).keySet())
+				.isEqualTo(nodeValues(map.graph()));
+	}
+
+	@Test
+	public void testEveryTransportIsUsed() {
+		MapGenerator map = new MapGenerator.Builder(1000).build();
+		int total = 0;
+		for (Transport transport : Transport.values()) {
+			assertThat(map.edgeCount(transport) > 0).isTrue();
+			total += map.edgeCount(transport);
+		}
+		assertThat(total).isEqualTo(map.edgeCount());
+	}
+
+	@Test
+	public void testEveryNodeIsReachableByTaxi() {
+		for (int nodes : new int[]{1, 2, 10, 199, 1000}) {
+			Graph<Integer, Transport> graph = new MapGenerator.Builder(nodes).build().graph();
+			Set<Node<Integer>> seen = new HashSet<>();
+			Deque<Node<Integer>> queue = new ArrayDeque<>();
+			queue.add(graph.getNode(1));
+			seen.add(graph.getNode(1));
+			while (!queue.isEmpty())
+				for (Edge<Integer, Transport> edge : graph.getEdgesFrom(queue.poll()))
+					if (edge.data() == Transport.TAXI && seen.add(edge.destination()))
+						queue.add(edge.destination());
+			assertThat(seen.size()).isEqualTo(nodes);
+		}
+	}
+
+	@Test
+	public void testBadNodeCountShouldThrow() {
+		assertThatThrownBy(() -> new MapGenerator.Builder(0))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new MapGenerator.Builder(MapGenerator.MAX_NODES + 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static Set<Integer> nodeValues(Graph<Integer, Transport> graph) {
+		Set<Integer> values = new HashSet<>();
+		for (Node<Integer> node : graph.getNodes()) values.add(node.value());
+		return values;
+	}
+
+}
@@ -2,7 +2,24 @@ package uk.ac.bris.cs.scotlandyard.auxiliary;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import uk.ac.bris.cs.gamekit.graph.CompactGraph;
+import uk.ac.bris.cs.gamekit.graph.DistanceTable;
+import uk.ac.bris.cs.gamekit.graph.GraphFile;
 import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
+import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
+import uk.ac.bris.cs.scotlandyard.model.MapCompiler;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGraphReader;
 import uk.ac.bris.cs.scotlandyard.model.Transport;
 
@@ -28,6 +45,98 @@ public class ScotlandYardGraphReaderTest {
 				.isEqualByComparingTo(Transport.FERRY);
 	}
 
+	@Test
+	public void testCompactGraphMatchesUndirectedGraph() {
+		ImmutableGraph<Integer, Transport> graph =
+				fromLines(asList("3 2", "1", "2", "3", "1 2 Taxi", "3 1 Bus"));
+		assertThat(graph).isEqualTo(new UndirectedGraph<>(graph));
+		CompactGraph<Transport> compact = CompactGraph.copyOf(graph, Transport.class);
+		assertThat(CompactGraph.copyOf(graph, Transport.class)).isSameAs(compact);
+		int node = compact.indexOf(1);
+		assertThat(compact.degree(node)).isEqualTo(2);
+		assertThat(compact.valueOf(compact.edgeTarget(compact.edgeStart(node)))).isEqualTo(2);
+		assertThat(compact.edgeData(compact.edgeStart(node) + 1)).isEqualTo(Transport.BUS);
+		assertThat(compact.indexOf(4)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testCompiledMapMatchesLines() throws IOException, URISyntaxException {
+		Path file = Files.createTempFile("map", ".bin");
+		try {
+			List<String> lines = Files.readAllLines(Paths.get(
+					ScotlandYardGraphReaderTest.class.getResource("/graph.txt").toURI()));
+			List<String> positionLines = asList("199", "1 317 78", "2 781 42");
+			MapCompiler.compile(lines, positionLines, file, true);
+			ImmutableGraph<Integer, Transport> graph = fromLines(lines);
+			Map<Integer, Entry<Integer, Integer>> positions = positionsFromLines(positionLines);
+			assertThat(fromFile(file)).isEqualTo(graph);
+
+			GraphFile<Transport> compiled = GraphFile.read(file, Transport.class);
+			assertThat(compiled.positions()).isEqualTo(positions);
+			assertThat(compiled.distances()).isPresent();
+			DistanceTable<Transport> expected = DistanceTable.of(
+					CompactGraph.copyOf(graph, Transport.class));
+			DistanceTable<Transport> actual = compiled.distances().get();
+			assertThat(actual.allowed()).isEqualTo(EnumSet.allOf(Transport.class));
+			for (int source : asList(1, 67, 108, 199))
+				for (int destination : asList(1, 46, 115, 194))
+					assertThat(actual.distanceBetween(source, destination))
+							.isEqualTo(expected.distanceBetween(source, destination));
+			assertThat(DistanceTable.cached(compiled.graph(), EnumSet.allOf(Transport.class)))
+					.isSameAs(actual);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testCorruptCompiledMapShouldThrow() throws IOException {
+		Path file = Files.createTempFile("map", ".bin");
+		try {
+			Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+			assertThatThrownBy(() -> fromFile(file)).isInstanceOf(IOException.class);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testCorruptSizesInCompiledMapShouldThrow() throws IOException {
+		Path file = Files.createTempFile("map", ".bin");
+		try {
+			CompactGraph<Transport> graph = CompactGraph.copyOf(
+					fromLines(asList("3 2", "1", "2", "3", "1 2 Taxi", "2 3 Bus")), Transport.class);
+			GraphFile.write(file, graph, emptyMap(), EnumSet.allOf(Transport.class));
+			byte[] valid = Files.readAllBytes(file);
+			int firstName = 3 * 4;
+			int nodes = firstName;
+			for (Transport transport : Transport.values()) nodes += 2 + transport.name().length();
+
+			// cut off in the middle of the distance table
+			assertCompiledMapIsCorrupt(file, copyOf(valid, valid.length - 1));
+			// sizes far beyond the file
+			assertCompiledMapIsCorrupt(file, withInt(valid, nodes, Integer.MAX_VALUE));
+			assertCompiledMapIsCorrupt(file, withInt(valid, nodes + 4, 1 << 30));
+			// a name length that is negative as a signed short
+			ByteBuffer name = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			name.putShort(firstName, (short) 0xFFFF);
+			assertCompiledMapIsCorrupt(file, name.array());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static byte[] withInt(byte[] bytes, int offset, int value) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		return buffer.putInt(offset, value).array();
+	}
+
+	private static void assertCompiledMapIsCorrupt(Path file, byte[] bytes) throws IOException {
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> GraphFile.read(file, Transport.class))
+				.isInstanceOf(IOException.class);
+	}
+
 	@Test
 	public void testEmptyInputShouldThrow() {
 		assertThatThrownBy(() -> fromLines(emptyList()));
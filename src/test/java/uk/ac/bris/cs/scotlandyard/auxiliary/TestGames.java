@@ -2,29 +2,39 @@ package uk.ac.bris.cs.scotlandyard.auxiliary;
 
 import com.google.common.collect.ImmutableMap;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
+import uk.ac.bris.cs.gamekit.graph.Graph;
 import uk.ac.bris.cs.scotlandyard.auxiliary.AnonymousMoves.AnonymousDoubleMove;
 import uk.ac.bris.cs.scotlandyard.auxiliary.AnonymousMoves.AnonymousPassMove;
 import uk.ac.bris.cs.scotlandyard.auxiliary.AnonymousMoves.AnonymousTicketMove;
 import uk.ac.bris.cs.scotlandyard.harness.Requirement;
 import uk.ac.bris.cs.scotlandyard.model.Colour;
 import uk.ac.bris.cs.scotlandyard.model.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.PassMove;
 import uk.ac.bris.cs.scotlandyard.model.Player;
 import uk.ac.bris.cs.scotlandyard.model.PlayerConfiguration;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGame;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardModel;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+import uk.ac.bris.cs.scotlandyard.model.Spectator;
+import uk.ac.bris.cs.scotlandyard.model.StandardGame;
 import uk.ac.bris.cs.scotlandyard.model.Ticket;
 import uk.ac.bris.cs.scotlandyard.model.TicketMove;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
 
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
@@ -62,6 +72,11 @@ public class TestGames {
 	 */
 	public static final List<Integer> MRX_LOCATIONS = unmodifiableList(
 			asList(35, 45, 51, 71, 78, 104, 106, 127, 132, 166, 170, 172));
+	/**
+	 * All detective colours, in the order they join the seeded games below
+	 */
+	public static final List<Colour> DETECTIVES = unmodifiableList(
+			asList(BLUE, GREEN, RED, WHITE, YELLOW));
 	/**
 	 * The default amount of tickets for a detective, which is:
 	 * <p>
@@ -400,5 +415,118 @@ public class TestGames {
 		return doNothingPlayer(WHITE, DETECTIVE_LOCATIONS.get(4));
 	}
 
+	/**
+	 * Configurations for a game on the standard map with the standard tickets,
+	 * starting at the locations {@link StandardGame} generates for the seed
+	 *
+	 * @param seed the seed of the starting locations
+	 * @param detectives the number of detectives, they take the first colours
+	 * of {@link #DETECTIVES}
+	 * @param player the player for everyone; not null
+	 * @return Mr.X followed by the detectives; never null
+	 */
+	public static PlayerConfiguration[] seededConfigurations(int seed, int detectives,
+			Player player) {
+		requireNonNull(player);
+		List<Integer> locations = StandardGame.generateDetectiveLocations(seed, detectives);
+		PlayerConfiguration[] configurations = new PlayerConfiguration[detectives + 1];
+		configurations[0] = new PlayerConfiguration.Builder(BLACK).using(player)
+				.with(StandardGame.generateMrXTickets())
+				.at(StandardGame.generateMrXLocation(seed)).build();
+		for (int i = 0; i < detectives; i++)
+			configurations[i + 1] = new PlayerConfiguration.Builder(DETECTIVES.get(i))
+					.using(player).with(StandardGame.generateDetectiveTickets())
+					.at(locations.get(i)).build();
+		return configurations;
+	}
+
+	/**
+	 * Picks one of the moves, the same one for the same random sequence
+	 * whatever the iteration order of the set
+	 *
+	 * @param random the source of the pick; not null
+	 * @param moves the moves; not empty
+	 * @return the picked move; never null
+	 */
+	public static Move randomMove(Random random, Set<Move> moves) {
+		List<Move> sorted = new ArrayList<>(moves);
+		sorted.sort(Comparator.comparing(Move::toString));
+		return sorted.get(random.nextInt(sorted.size()));
+	}
+
+	/**
+	 * Plays a game on the given map where everyone picks a random move, for
+	 * tests that check something against {@link ScotlandYardModel} at every
+	 * turn. The seed decides the number of detectives (1 to 5), the starting
+	 * locations, the number of rounds (5 to 23) and every move.
+	 *
+	 * @param graph the standard map; not null
+	 * @param seed the seed of the game
+	 * @param observer told about the game and every move; not null
+	 * @return false if the seed puts Mr.X on a detective and the game was not
+	 * played
+	 */
+	public static boolean randomPlayOut(Graph<Integer, Transport> graph, int seed,
+			PlayOutObserver observer) {
+		Random random = new Random(seed);
+		int detectives = 1 + random.nextInt(DETECTIVES.size());
+		List<Integer> locations = StandardGame.generateDetectiveLocations(seed, detectives);
+		if (locations.contains(StandardGame.generateMrXLocation(seed))) return false;
+		List<Boolean> rounds = StandardGame.ROUNDS.subList(0, 5 + random.nextInt(19));
+
+		boolean[] over = {false};
+		Player player = (view, location, moves, callback) -> {
+			if (moves.isEmpty()) { // the model hands a stuck Mr.X no moves at all
+				over[0] = true;
+				return;
+			}
+			Move move = randomMove(random, moves);
+			observer.onMoveChosen(view, location, moves, move);
+			callback.accept(move);
+		};
+		PlayerConfiguration[] configurations = seededConfigurations(seed, detectives, player);
+		PlayerConfiguration[] rest = Arrays.copyOfRange(configurations, 2, configurations.length);
+		ScotlandYardModel model = new ScotlandYardModel(rounds, graph, configurations[0],
+				configurations[1], rest);
+		observer.onStart(model, configurations[0], configurations[1], rest);
+		model.registerSpectator(observer);
+		model.registerSpectator(new Spectator() {
+			@Override
+			public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+				over[0] = true;
+			}
+		});
+		while (!over[0]) model.startRotate();
+		return true;
+	}
+
+	/**
+	 * Follows a game played by {@link #randomPlayOut}, it is registered as a
+	 * spectator of the model as well
+	 */
+	public interface PlayOutObserver extends Spectator {
+
+		/**
+		 * Called before the first move
+		 *
+		 * @param model the game, its rounds are the ones played
+		 * @param mrX Mr.X
+		 * @param firstDetective the first detective
+		 * @param restOfTheDetectives the other detectives
+		 */
+		default void onStart(ScotlandYardModel model, PlayerConfiguration mrX,
+				PlayerConfiguration firstDetective, PlayerConfiguration... restOfTheDetectives) {}
+
+		/**
+		 * Called with the move a player picked, before it is played
+		 *
+		 * @param view the view the player was handed
+		 * @param location the location of the player
+		 * @param moves the valid moves the player was handed
+		 * @param move the picked move
+		 */
+		default void onMoveChosen(ScotlandYardView view, int location, Set<Move> moves,
+				Move move) {}
+	}
 
 }
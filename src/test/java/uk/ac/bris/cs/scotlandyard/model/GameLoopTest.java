@@ -0,0 +1,181 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.DETECTIVES;
+import static uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.dummyPlayer;
+import static uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.randomMove;
+import static uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.seededConfigurations;
+
+/**
+ * Tests that {@link GameLoop} plays the same games as the recursive callbacks
+ * of {@link ScotlandYardModel}, without the call stack growing, and replaces
+ * moves that are too late
+ */
+public class GameLoopTest {
+
+	private static Graph<Integer, Transport> graph;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		graph = StandardGame.standardGraph();
+	}
+
+	@Test
+	public void testSpectatorsAreNotifiedInTheSameOrder() {
+		for (int seed = 0; seed < 30; seed++)
+			assertThat(playLoop(seed, false, null)).isEqualTo(playRecursive(seed));
+	}
+
+	@Test
+	public void testAsynchronousPlayersPlayTheSameGame() {
+		for (int seed = 0; seed < 5; seed++)
+			assertThat(playLoop(seed, true, null)).isEqualTo(playRecursive(seed));
+	}
+
+	@Test
+	public void testStackDepthStaysTheSame() {
+		List<Integer> depths = new ArrayList<>();
+		playLoop(0, false, depths);
+		assertThat(depths).hasSizeGreaterThan(10);
+		assertThat(new TreeSet<>(depths)).hasSize(1);
+	}
+
+	@Test
+	public void testLateMoveIsCancelledAndReplacedByFallback() {
+		List<CompletableFuture<Move>> futures = new ArrayList<>();
+		PlayerConfiguration[] configurations =
+				seededConfigurations(0, DETECTIVES.size(), dummyPlayer());
+		GameLoop.Builder builder = new GameLoop.Builder(StandardGame.ROUNDS, graph)
+				.moveTimeout(Duration.ofMillis(20), moves -> randomMove(new Random(0), moves));
+		for (PlayerConfiguration configuration : configurations)
+			builder.player(configuration.colour, (view, location, moves) -> {
+				CompletableFuture<Move> never = new CompletableFuture<>();
+				futures.add(never);
+				return never;
+			}, configuration.tickets, configuration.location);
+		GameLoop loop = builder.build();
+		List<String> events = new ArrayList<>();
+		loop.game().registerSpectator(recorder(events));
+
+		assertThat(loop.step()).isTrue();
+		assertThat(futures).hasSize(1);
+		assertThat(futures.get(0).isCancelled()).isTrue();
+		assertThat(loop.timeouts()).isEqualTo(1);
+		assertThat(events).contains("round 1");
+	}
+
+	@Test
+	public void testCancellationInterruptsExecutorPlayer() throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CountDownLatch interrupted = new CountDownLatch(1);
+			PullPlayer slow = PullPlayer.onExecutor((view, location, moves) -> {
+				try {
+					Thread.sleep(10_000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return moves.iterator().next();
+			}, executor);
+			GameLoop.Builder builder = new GameLoop.Builder(StandardGame.ROUNDS, graph)
+					.moveTimeout(Duration.ofMillis(20));
+			for (PlayerConfiguration configuration :
+					seededConfigurations(0, DETECTIVES.size(), dummyPlayer()))
+				builder.player(configuration.colour, slow, configuration.tickets,
+						configuration.location);
+			GameLoop loop = builder.build();
+
+			assertThat(loop.step()).isTrue();
+			assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// plays a game with random moves using the model's own callbacks
+	private static List<String> playRecursive(int seed) {
+		Random random = new Random(seed);
+		List<String> events = new ArrayList<>();
+		boolean[] stuck = {false};
+		Player player = (view, location, moves, callback) -> {
+			if (moves.isEmpty()) {
+				stuck[0] = true;
+				return;
+			}
+			callback.accept(randomMove(random, moves));
+		};
+		PlayerConfiguration[] configurations = seededConfigurations(seed, DETECTIVES.size(), player);
+		ScotlandYardModel model = new ScotlandYardModel(StandardGame.ROUNDS, graph,
+				configurations[0], configurations[1],
+				Arrays.copyOfRange(configurations, 2, configurations.length));
+		model.registerSpectator(recorder(events));
+		while (!model.isGameOver() && !stuck[0]) model.startRotate();
+		if (stuck[0]) events.add("stuck");
+		return events;
+	}
+
+	private static List<String> playLoop(int seed, boolean async, List<Integer> depths) {
+		Random random = new Random(seed);
+		List<String> events = new ArrayList<>();
+		PullPlayer player = (view, location, moves) -> {
+			if (depths != null) depths.add(Thread.currentThread().getStackTrace().length);
+			return async ? CompletableFuture.supplyAsync(() -> randomMove(random, moves))
+					: CompletableFuture.completedFuture(randomMove(random, moves));
+		};
+		GameLoop.Builder builder = new GameLoop.Builder(StandardGame.ROUNDS, graph);
+		for (PlayerConfiguration configuration :
+				seededConfigurations(seed, DETECTIVES.size(), dummyPlayer()))
+			builder.player(configuration.colour, player, configuration.tickets,
+					configuration.location);
+		GameLoop loop = builder.build();
+		loop.game().registerSpectator(recorder(events));
+		Set<Colour> winners = loop.run();
+		if (loop.stuckPlayer().isPresent()) events.add("stuck");
+		else assertThat(winners).isEqualTo(loop.game().getWinningPlayers());
+		return events;
+	}
+
+	private static Spectator recorder(List<String> events) {
+		return new Spectator() {
+			@Override
+			public void onMoveMade(ScotlandYardView view, Move move) {
+				events.add("move " + move + " " + view.getCurrentPlayer());
+			}
+
+			@Override
+			public void onRoundStarted(ScotlandYardView view, int round) {
+				events.add("round " + round);
+			}
+
+			@Override
+			public void onRotationComplete(ScotlandYardView view) {
+				events.add("rotation " + view.getCurrentRound());
+			}
+
+			@Override
+			public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+				events.add("over " + new TreeSet<>(winningPlayers));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,134 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.auxiliary.TestGames;
+import uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.PlayOutObserver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.doNothingPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLUE;
+
+/**
+ * Tests that {@link GameState} follows the same rules as
+ * {@link ScotlandYardModel}, and hashes positions the same way, by playing
+ * random games on both
+ */
+public class GameStateTest {
+
+	private static Graph<Integer, Transport> graph;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		graph = StandardGame.standardGraph();
+	}
+
+	@Test
+	public void testRandomPlayOutsMatchModel() {
+		for (int seed = 0; seed < 50; seed++) playOut(seed);
+	}
+
+	@Test
+	public void testDetectiveTicketsGoToMrX() {
+		GameState state = GameState.of(StandardGame.ROUNDS, graph,
+				doNothingPlayer(BLACK, 45), doNothingPlayer(BLUE, 46));
+		state.apply(new TicketMove(BLACK, Ticket.TAXI, 58));
+		state.apply(new TicketMove(BLUE, Ticket.BUS, 34));
+		assertThat(state.tickets(0, Ticket.TAXI)).isEqualTo(3);
+		assertThat(state.tickets(0, Ticket.BUS)).isEqualTo(4);
+		assertThat(state.tickets(1, Ticket.BUS)).isEqualTo(7);
+		assertThat(state.hash()).isEqualTo(state.computeHash());
+		state.undo();
+		assertThat(state.hash()).isEqualTo(state.computeHash());
+		assertThat(state.tickets(0, Ticket.BUS)).isEqualTo(3);
+		assertThat(state.tickets(1, Ticket.BUS)).isEqualTo(8);
+		assertThat(state.location(1)).isEqualTo(46);
+	}
+
+	@Test
+	public void testInvalidMoveShouldThrow() {
+		GameState state = GameState.of(StandardGame.ROUNDS, graph,
+				doNothingPlayer(BLACK, 45), doNothingPlayer(BLUE, 46));
+		assertThatThrownBy(() -> state.apply(new TicketMove(BLACK, Ticket.TAXI, 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> state.apply(new TicketMove(BLUE, Ticket.TAXI, 47)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(state::undo).isInstanceOf(IllegalStateException.class);
+	}
+
+	// plays a game where everyone picks a random move, checking the mirrored
+	// state before every move and whenever the model checks for game over
+	private static void playOut(int seed) {
+		GameState[] state = new GameState[1];
+		ScotlandYardModel[] game = new ScotlandYardModel[1];
+		String[] initial = new String[1];
+		long[] initialHash = new long[1];
+		boolean played = TestGames.randomPlayOut(graph, seed, new PlayOutObserver() {
+			@Override
+			public void onStart(ScotlandYardModel model, PlayerConfiguration mrX,
+					PlayerConfiguration firstDetective, PlayerConfiguration... restOfTheDetectives) {
+				game[0] = model;
+				state[0] = GameState.of(model.getRounds(), graph, mrX, firstDetective,
+						restOfTheDetectives);
+				initial[0] = state[0].toString();
+				initialHash[0] = state[0].hash();
+			}
+
+			@Override
+			public void onMoveChosen(ScotlandYardView view, int location, Set<Move> moves,
+					Move move) {
+				assertMatches(state[0], view);
+				assertThat(state[0].hash()).isEqualTo(game[0].getZobristHash());
+				assertThat(state[0].hash()).isEqualTo(Zobrist.hash(view, state[0].location(0)));
+				assertThat(state[0].location(state[0].currentPlayer())).isEqualTo(location);
+				long[] buffer = new long[state[0].maxMoves()];
+				assertThat(PackedMove.toMoves(buffer, state[0].validMoves(buffer))).isEqualTo(moves);
+				state[0].apply(move);
+			}
+
+			@Override
+			public void onRotationComplete(ScotlandYardView view) {
+				assertGameOverMatches(state[0], view);
+			}
+
+			@Override
+			public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+				assertGameOverMatches(state[0], view);
+			}
+		});
+		if (!played) return;
+
+		while (state[0].depth() > 0) state[0].undo();
+		assertThat(state[0].toString()).isEqualTo(initial[0]);
+		assertThat(state[0].hash()).isEqualTo(initialHash[0]);
+		assertThat(state[0].round()).isZero();
+		assertThat(state[0].mrXLastLocation()).isZero();
+	}
+
+	private static void assertMatches(GameState state, ScotlandYardView view) {
+		assertThat(state.currentColour()).isEqualTo(view.getCurrentPlayer());
+		assertThat(state.round()).isEqualTo(view.getCurrentRound());
+		assertThat(state.mrXLastLocation()).isEqualTo(view.getPlayerLocation(BLACK).orElse(-1));
+		assertThat(state.isGameOver()).isFalse();
+		for (int i = 0; i < state.playerCount(); i++) {
+			Colour colour = state.colour(i);
+			if (colour.isDetective())
+				assertThat(view.getPlayerLocation(colour)).hasValue(state.location(i));
+			for (Ticket ticket : Ticket.values())
+				assertThat(view.getPlayerTickets(colour, ticket)).hasValue(state.tickets(i, ticket));
+		}
+	}
+
+	private static void assertGameOverMatches(GameState state, ScotlandYardView view) {
+		assertThat(state.isGameOver()).isEqualTo(view.isGameOver());
+		assertThat(state.winningPlayers()).isEqualTo(view.getWinningPlayers());
+	}
+
+}
@@ -3,8 +3,13 @@ package uk.ac.bris.cs.scotlandyard.model;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import uk.ac.bris.cs.scotlandyard.ai.AIPoolTest;
+import uk.ac.bris.cs.scotlandyard.ai.TranspositionTableTest;
+import uk.ac.bris.cs.scotlandyard.auxiliary.DistanceTableTest;
+
 /**
- * Includes all test for the actual game model
+ * Includes all test for the actual game model and the structures it is
+ * built on
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
@@ -16,5 +21,17 @@ import org.junit.runners.Suite;
 		ModelRoundTest.class,
 		ModelPlayerTest.class,
 		ModelValidMoveTest.class,
-		ModelSpectatorTest.class})
+		ModelSpectatorTest.class,
+		GameStateTest.class,
+		GameLoopTest.class,
+		PersistentGameStateTest.class,
+		DistanceTableTest.class,
+		TicketReachabilityTest.class,
+		NodeSetTest.class,
+		MrXCandidateTrackerTest.class,
+		MrXBeliefTrackerTest.class,
+		PackedMoveTest.class,
+		MoveGeneratorTest.class,
+		TranspositionTableTest.class,
+		AIPoolTest.class})
 public class ModelTest {}
@@ -0,0 +1,73 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.auxiliary.TestGames;
+import uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.PlayOutObserver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+/**
+ * Tests that {@link MoveGenerator} generates the same moves as
+ * {@link ScotlandYardModel} hands to its players, by playing random games
+ */
+public class MoveGeneratorTest {
+
+	private static Graph<Integer, Transport> graph;
+	private static MoveGenerator generator;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		graph = StandardGame.standardGraph();
+		generator = new MoveGenerator(NeighbourIndex.of(graph));
+	}
+
+	@Test
+	public void testRandomPlayOutsMatchModel() {
+		int[] turns = {0};
+		for (int seed = 0; seed < 400; seed++)
+			TestGames.randomPlayOut(graph, seed, new PlayOutObserver() {
+				@Override
+				public void onMoveChosen(ScotlandYardView view, int location, Set<Move> moves,
+						Move move) {
+					assertThat(generate(view, location)).isEqualTo(moves);
+					turns[0]++;
+				}
+			});
+		assertThat(turns[0] > 1000).isTrue();
+	}
+
+	@Test
+	public void testStuckDetectivePasses() {
+		long[] out = new long[generator.maxMoves()];
+		int count = generator.detectiveMoves(Colour.RED, 1, new int[Ticket.values().length],
+				NodeSet.of(generator.neighbours()), out);
+		assertThat(PackedMove.toMoves(out, count)).isEqualTo(Set.of(new PassMove(Colour.RED)));
+	}
+
+	// the moves the generator gives the current player of the view
+	private static Set<Move> generate(ScotlandYardView view, int location) {
+		Colour colour = view.getCurrentPlayer();
+		int[] tickets = new int[Ticket.values().length];
+		for (Ticket ticket : Ticket.values())
+			tickets[ticket.ordinal()] = view.getPlayerTickets(colour, ticket).orElseThrow();
+		NeighbourIndex neighbours = generator.neighbours();
+		NodeSet detectives = NodeSet.of(neighbours);
+		for (Colour player : view.getPlayers())
+			if (player.isDetective())
+				detectives.add(neighbours.indexOf(view.getPlayerLocation(player).orElseThrow()));
+		long[] out = new long[generator.maxMoves()];
+		int count = colour == BLACK
+				? generator.mrXMoves(location, tickets, detectives,
+						view.getCurrentRound() >= view.getRounds().size() - 1, out)
+				: generator.detectiveMoves(colour, location, tickets, detectives, out);
+		return PackedMove.toMoves(out, count);
+	}
+
+}
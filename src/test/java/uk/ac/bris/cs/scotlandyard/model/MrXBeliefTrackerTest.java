@@ -0,0 +1,117 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link MrXBeliefTracker} on a small hand-built map
+ */
+public class MrXBeliefTrackerTest {
+
+	private static final double EPSILON = 1e-9;
+
+	// 1 -taxi- 2, 1 -taxi- 3, 1 -ferry- 4, 1 -bus- 5
+	private static final NeighbourIndex NEIGHBOURS = NeighbourIndex.of(
+			ScotlandYardGraphReader.fromLines(asList("5 4", "1", "2", "3", "4", "5",
+					"1 2 Taxi", "1 3 Taxi", "1 4 Ferry", "1 5 Bus")));
+
+	@Test
+	public void testDistributionIsNormalised() {
+		MrXBeliefTracker tracker = new MrXBeliefTracker(NEIGHBOURS);
+		assertThat(close(total(tracker), 1)).isTrue();
+		tracker.observeTicket(Ticket.TAXI, NodeSet.of(NEIGHBOURS));
+		assertThat(close(total(tracker), 1)).isTrue();
+		tracker.eliminate(index(2));
+		assertThat(close(total(tracker), 1)).isTrue();
+		assertThat(tracker.probability(index(2))).isEqualTo(0.0);
+	}
+
+	@Test
+	public void testTicketSpreadsOverMatchingEdges() {
+		MrXBeliefTracker tracker = new MrXBeliefTracker(NEIGHBOURS);
+		tracker.observeLocation(index(1));
+		tracker.observeTicket(Ticket.TAXI, NodeSet.of(NEIGHBOURS));
+		assertThat(probabilities(tracker)).isEqualTo(new double[]{0, 0.5, 0.5, 0, 0});
+
+		tracker.observeLocation(index(1));
+		tracker.observeTicket(Ticket.BUS, NodeSet.of(NEIGHBOURS));
+		assertThat(probabilities(tracker)).isEqualTo(new double[]{0, 0, 0, 0, 1});
+	}
+
+	@Test
+	public void testOnlySecretTicketsSpreadOverFerries() {
+		MrXBeliefTracker tracker = new MrXBeliefTracker(NEIGHBOURS);
+		tracker.observeLocation(index(1));
+		tracker.observeTicket(Ticket.SECRET, NodeSet.of(NEIGHBOURS));
+		assertThat(probabilities(tracker)).isEqualTo(new double[]{0, 0.25, 0.25, 0.25, 0.25});
+
+		for (Ticket ticket : asList(Ticket.TAXI, Ticket.BUS)) {
+			tracker.observeLocation(index(1));
+			tracker.observeTicket(ticket, NodeSet.of(NEIGHBOURS));
+			assertThat(tracker.probability(index(4))).isEqualTo(0.0);
+		}
+	}
+
+	@Test
+	public void testOccupiedNodesAreSkipped() {
+		MrXBeliefTracker tracker = new MrXBeliefTracker(NEIGHBOURS);
+		tracker.observeLocation(index(1));
+		NodeSet occupied = NodeSet.of(NEIGHBOURS);
+		occupied.add(index(2));
+		tracker.observeTicket(Ticket.TAXI, occupied);
+		assertThat(probabilities(tracker)).isEqualTo(new double[]{0, 0, 1, 0, 0});
+	}
+
+	@Test
+	public void testTopKIsOrderedAndTruncated() {
+		MrXBeliefTracker tracker = new MrXBeliefTracker(NEIGHBOURS);
+		// from uniform, 1 is reached from 2 and 3, while 2 and 3 only get half of 1
+		tracker.observeTicket(Ticket.TAXI, NodeSet.of(NEIGHBOURS));
+		int[] all = new int[5];
+		assertThat(tracker.topK(all)).isEqualTo(3);
+		assertThat(all[0]).isEqualTo(index(1));
+		assertThat(close(tracker.probability(all[0]), 2.0 / 3)).isTrue();
+		assertThat(tracker.probability(all[1]) >= tracker.probability(all[2])).isTrue();
+		assertThat(close(tracker.probability(all[2]), 1.0 / 6)).isTrue();
+
+		int[] two = new int[2];
+		assertThat(tracker.topK(two)).isEqualTo(2);
+		assertThat(two[0]).isEqualTo(index(1));
+		assertThat(asList(index(2), index(3)).contains(two[1])).isTrue();
+		assertThat(tracker.topK(new int[0])).isEqualTo(0);
+	}
+
+	@Test
+	public void testContradictionStartsOver() {
+		MrXBeliefTracker tracker = new MrXBeliefTracker(NEIGHBOURS);
+		tracker.observeLocation(index(4));
+		tracker.eliminate(index(4));
+		assertThat(probabilities(tracker)).isEqualTo(new double[]{0.2, 0.2, 0.2, 0.2, 0.2});
+	}
+
+	private static int index(int location) {
+		return NEIGHBOURS.indexOf(location);
+	}
+
+	// probabilities by location, rounded so they can be compared exactly
+	private static double[] probabilities(MrXBeliefTracker tracker) {
+		double[] probabilities = new double[NEIGHBOURS.size()];
+		for (int location = 1; location <= probabilities.length; location++)
+			probabilities[location - 1] =
+					Math.round(tracker.probability(index(location)) * 1e9) / 1e9;
+		return probabilities;
+	}
+
+	private static double total(MrXBeliefTracker tracker) {
+		double total = 0;
+		for (int i = 0; i < NEIGHBOURS.size(); i++) total += tracker.probability(i);
+		return total;
+	}
+
+	private static boolean close(double actual, double expected) {
+		return Math.abs(actual - expected) < EPSILON;
+	}
+
+}
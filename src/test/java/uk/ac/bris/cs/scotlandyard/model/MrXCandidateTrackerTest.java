@@ -0,0 +1,80 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLUE;
+
+/**
+ * Tests for {@link MrXCandidateTracker} on a small hand-built map
+ */
+public class MrXCandidateTrackerTest {
+
+	// 1 -taxi- 2 -taxi- 3 -underground- 6, 1 -bus- 4 -taxi- 5, 2 -taxi- 5 -taxi- 6
+	private static final Graph<Integer, Transport> GRAPH = ScotlandYardGraphReader.fromLines(
+			asList("6 7", "1", "2", "3", "4", "5", "6",
+					"1 2 Taxi", "2 3 Taxi", "3 6 Underground", "1 4 Bus", "4 5 Taxi",
+					"2 5 Taxi", "5 6 Taxi"));
+
+	@Test
+	public void testCandidatesFollowTicketsRevealsAndDetectives() {
+		MrXCandidateTracker tracker = new MrXCandidateTracker(GRAPH, asList(1, 3, 4));
+		List<List<Integer>> seenByBlue = new ArrayList<>();
+		Deque<Move> mrX = new ArrayDeque<>(asList(
+				new TicketMove(BLACK, Ticket.TAXI, 2),
+				new TicketMove(BLACK, Ticket.TAXI, 3),
+				new TicketMove(BLACK, Ticket.SECRET, 6)));
+		Deque<Move> blue = new ArrayDeque<>(asList(
+				new TicketMove(BLUE, Ticket.TAXI, 5),
+				new TicketMove(BLUE, Ticket.TAXI, 2),
+				new TicketMove(BLUE, Ticket.TAXI, 1)));
+		PlayerConfiguration mrXConfiguration = new PlayerConfiguration.Builder(BLACK)
+				.using((view, location, moves, callback) -> callback.accept(mrX.poll()))
+				.with(StandardGame.generateMrXTickets()).at(1).build();
+		PlayerConfiguration blueConfiguration = new PlayerConfiguration.Builder(BLUE)
+				.using((view, location, moves, callback) -> {
+					seenByBlue.add(locations(tracker));
+					callback.accept(blue.poll());
+				}).with(StandardGame.generateDetectiveTickets()).at(6).build();
+		ScotlandYardModel model = new ScotlandYardModel(asList(false, true, false), GRAPH,
+				mrXConfiguration, blueConfiguration);
+		model.registerSpectator(tracker);
+
+		// hidden taxi from 1, 3 or 4
+		model.startRotate();
+		assertThat(seenByBlue.get(0)).isEqualTo(asList(2, 5));
+		// Blue moved onto 5, Mr.X would have been caught there
+		assertThat(locations(tracker)).isEqualTo(asList(2));
+
+		// revealed at 3, whatever was known before
+		model.startRotate();
+		assertThat(seenByBlue.get(1)).isEqualTo(asList(3));
+
+		// hidden secret move from 3, where 2 holds Blue
+		model.startRotate();
+		assertThat(seenByBlue.get(2)).isEqualTo(asList(6));
+	}
+
+	@Test
+	public void testUnknownStartCouldBeAnywhere() {
+		MrXCandidateTracker tracker = new MrXCandidateTracker(GRAPH);
+		assertThat(locations(tracker)).isEqualTo(asList(1, 2, 3, 4, 5, 6));
+	}
+
+	private static List<Integer> locations(MrXCandidateTracker tracker) {
+		List<Integer> locations = new ArrayList<>();
+		for (int location : tracker.candidateLocations()) locations.add(location);
+		locations.sort(null);
+		return locations;
+	}
+
+}
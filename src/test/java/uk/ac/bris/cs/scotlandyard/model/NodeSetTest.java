@@ -0,0 +1,138 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link NodeSet}
+ */
+public class NodeSetTest {
+
+	// 1 -taxi- 2 -bus- 3 -underground- 4, 1 -ferry- 4
+	private static final NeighbourIndex NEIGHBOURS = NeighbourIndex.of(
+			ScotlandYardGraphReader.fromLines(asList("4 4", "1", "2", "3", "4",
+					"1 2 Taxi", "2 3 Bus", "3 4 Underground", "1 4 Ferry")));
+
+	@Test
+	public void testAddRemoveAndContains() {
+		NodeSet set = new NodeSet(130);
+		set.add(0);
+		set.add(64);
+		set.add(129);
+		assertThat(set.contains(64)).isTrue();
+		assertThat(set.contains(63)).isFalse();
+		assertThat(set.cardinality()).isEqualTo(3);
+		set.remove(64);
+		assertThat(set.contains(64)).isFalse();
+		assertThat(indices(set)).isEqualTo(asList(0, 129));
+		set.clear();
+		assertThat(set.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void testIndexOutsideCapacityShouldThrow() {
+		NodeSet set = new NodeSet(10);
+		assertThatThrownBy(() -> set.contains(10)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> set.contains(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> set.add(10)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> set.remove(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test
+	public void testFillOnlyAddsNodesWithinCapacity() {
+		NodeSet set = new NodeSet(70);
+		set.fill();
+		assertThat(set.cardinality()).isEqualTo(70);
+		assertThat(set.next(69)).isEqualTo(69);
+		assertThat(set.next(70)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testUnionIntersectionAndDifference() {
+		NodeSet a = set(100, 1, 5, 70), b = set(100, 5, 70, 99);
+
+		NodeSet union = a.copy();
+		union.or(b);
+		assertThat(indices(union)).isEqualTo(asList(1, 5, 70, 99));
+
+		NodeSet intersection = a.copy();
+		intersection.and(b);
+		assertThat(indices(intersection)).isEqualTo(asList(5, 70));
+
+		NodeSet difference = a.copy();
+		difference.andNot(b);
+		assertThat(indices(difference)).isEqualTo(asList(1));
+
+		assertThat(indices(a)).isEqualTo(asList(1, 5, 70));
+		assertThatThrownBy(() -> a.or(new NodeSet(101)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testExpandByTransport() {
+		NodeSet from = NodeSet.of(NEIGHBOURS);
+		from.add(index(2));
+		assertThat(locations(expand(from, Transport.TAXI))).isEqualTo(asList(1));
+		assertThat(locations(expand(from, Transport.BUS))).isEqualTo(asList(3));
+		assertThat(locations(expand(from, Transport.UNDERGROUND))).isEqualTo(asList());
+
+		from.add(index(4));
+		assertThat(locations(expand(from, Transport.UNDERGROUND))).isEqualTo(asList(3));
+		assertThat(locations(expand(from, Transport.FERRY))).isEqualTo(asList(1));
+		assertThatThrownBy(() -> from.expand(NEIGHBOURS, Transport.TAXI, from))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testExpandByTicket() {
+		NodeSet from = NodeSet.of(NEIGHBOURS);
+		from.add(index(1));
+		NodeSet into = NodeSet.of(NEIGHBOURS);
+		from.expand(NEIGHBOURS, Ticket.TAXI, into);
+		assertThat(locations(into)).isEqualTo(asList(2));
+
+		into.clear();
+		from.expand(NEIGHBOURS, Ticket.SECRET, into);
+		assertThat(locations(into)).isEqualTo(asList(2, 4));
+
+		into.clear();
+		from.expand(NEIGHBOURS, Ticket.DOUBLE, into);
+		assertThat(into.isEmpty()).isTrue();
+	}
+
+	private static NodeSet expand(NodeSet from, Transport transport) {
+		NodeSet into = NodeSet.of(NEIGHBOURS);
+		from.expand(NEIGHBOURS, transport, into);
+		return into;
+	}
+
+	private static NodeSet set(int capacity, int... indices) {
+		NodeSet set = new NodeSet(capacity);
+		for (int index : indices) set.add(index);
+		return set;
+	}
+
+	private static int index(int location) {
+		return NEIGHBOURS.indexOf(location);
+	}
+
+	private static List<Integer> indices(NodeSet set) {
+		List<Integer> indices = new ArrayList<>();
+		set.forEach(indices::add);
+		return indices;
+	}
+
+	private static List<Integer> locations(NodeSet set) {
+		List<Integer> locations = new ArrayList<>();
+		for (int location : set.toLocations(NEIGHBOURS)) locations.add(location);
+		locations.sort(null);
+		return locations;
+	}
+
+}
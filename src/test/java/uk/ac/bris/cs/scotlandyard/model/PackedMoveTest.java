@@ -0,0 +1,110 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.YELLOW;
+
+/**
+ * Tests the bit layout of {@link PackedMove} and its conversions to and from
+ * the {@link Move} hierarchy
+ */
+public class PackedMoveTest {
+
+	@Test
+	public void testEveryMoveSurvivesRoundTrip() {
+		for (Move move : moves()) {
+			long packed = PackedMove.fromMove(move);
+			assertThat(PackedMove.toMove(packed)).isEqualTo(move);
+			assertThat(PackedMove.colour(packed)).isEqualTo(move.colour());
+		}
+	}
+
+	@Test
+	public void testPassLayout() {
+		long packed = PackedMove.pass(YELLOW);
+		assertThat(packed).isEqualTo((long) YELLOW.ordinal());
+		assertThat(PackedMove.kind(packed)).isEqualTo(PackedMove.PASS);
+		assertThat(PackedMove.finalDestination(packed)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testTicketLayout() {
+		long packed = PackedMove.fromMove(new TicketMove(YELLOW, Ticket.UNDERGROUND, 199));
+		assertThat(packed & 0x7).isEqualTo((long) YELLOW.ordinal());
+		assertThat((packed >>> 3) & 0x3).isEqualTo((long) PackedMove.TICKET);
+		assertThat((packed >>> 5) & 0x7).isEqualTo((long) Ticket.UNDERGROUND.ordinal());
+		assertThat((packed >>> 11) & PackedMove.MAX_DESTINATION).isEqualTo(199L);
+		assertThat(packed >>> 37).isZero();
+		assertThat(PackedMove.destination(packed)).isEqualTo(199);
+		assertThat(PackedMove.finalDestination(packed)).isEqualTo(199);
+	}
+
+	@Test
+	public void testDoubleLayout() {
+		long packed = PackedMove.fromMove(
+				new DoubleMove(BLACK, Ticket.SECRET, 108, Ticket.BUS, 116));
+		assertThat(packed & 0x7).isEqualTo((long) BLACK.ordinal());
+		assertThat((packed >>> 3) & 0x3).isEqualTo((long) PackedMove.DOUBLE);
+		assertThat((packed >>> 5) & 0x7).isEqualTo((long) Ticket.SECRET.ordinal());
+		assertThat((packed >>> 8) & 0x7).isEqualTo((long) Ticket.BUS.ordinal());
+		assertThat((packed >>> 11) & PackedMove.MAX_DESTINATION).isEqualTo(108L);
+		assertThat(packed >>> 37).isEqualTo(116L);
+		assertThat(PackedMove.ticket(packed)).isEqualTo(Ticket.SECRET);
+		assertThat(PackedMove.secondTicket(packed)).isEqualTo(Ticket.BUS);
+		assertThat(PackedMove.finalDestination(packed)).isEqualTo(116);
+	}
+
+	@Test
+	public void testLargestDestinationsDoNotOverlap() {
+		int max = PackedMove.MAX_DESTINATION;
+		long packed = PackedMove.doubleMove(BLACK, Ticket.TAXI, max, Ticket.TAXI, max);
+		assertThat(packed).isPositive();
+		assertThat(PackedMove.destination(packed)).isEqualTo(max);
+		assertThat(PackedMove.secondDestination(packed)).isEqualTo(max);
+		assertThat(PackedMove.colour(packed)).isEqualTo(BLACK);
+		assertThat(PackedMove.toMove(PackedMove.ticket(YELLOW, Ticket.BUS, max)))
+				.isEqualTo(new TicketMove(YELLOW, Ticket.BUS, max));
+	}
+
+	@Test
+	public void testDestinationOutOfRangeShouldThrow() {
+		assertThatThrownBy(() -> PackedMove.ticket(BLACK, Ticket.TAXI, -1))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PackedMove.ticket(BLACK, Ticket.TAXI,
+				PackedMove.MAX_DESTINATION + 1)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PackedMove.doubleMove(BLACK, Ticket.TAXI, 1, Ticket.TAXI,
+				PackedMove.MAX_DESTINATION + 1)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testToMovesDecodesOnlyTheCount() {
+		List<Move> moves = moves();
+		long[] buffer = new long[moves.size() + 1];
+		for (int i = 0; i < moves.size(); i++) buffer[i] = PackedMove.fromMove(moves.get(i));
+		buffer[moves.size()] = PackedMove.pass(BLACK);
+		assertThat(PackedMove.toMoves(buffer, moves.size())).isEqualTo(new HashSet<>(moves));
+	}
+
+	// a move of every kind for every colour and ticket
+	private static List<Move> moves() {
+		List<Move> moves = new ArrayList<>();
+		for (Colour colour : Colour.values()) {
+			moves.add(new PassMove(colour));
+			for (Ticket ticket : Ticket.values()) {
+				moves.add(new TicketMove(colour, ticket, 1 + ticket.ordinal()));
+				for (Ticket second : asList(Ticket.TAXI, Ticket.SECRET))
+					moves.add(new DoubleMove(colour, ticket, 42, second, 199));
+			}
+		}
+		return moves;
+	}
+
+}
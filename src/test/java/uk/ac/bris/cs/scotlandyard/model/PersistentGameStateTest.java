@@ -0,0 +1,148 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.auxiliary.TestGames;
+import uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.PlayOutObserver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.auxiliary.TestGames.doNothingPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLUE;
+
+/**
+ * Tests that players are handed a {@link PersistentGameState} that does not
+ * change as the game goes on, that {@link PersistentGameState#withMove}
+ * derives the same states as {@link ScotlandYardModel}, and that states share
+ * the records of players a move does not change
+ */
+public class PersistentGameStateTest {
+
+	private static Graph<Integer, Transport> graph;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		graph = StandardGame.standardGraph();
+	}
+
+	@Test
+	public void testDerivedStatesMatchModel() {
+		for (int seed = 0; seed < 50; seed++) playOut(seed);
+	}
+
+	@Test
+	public void testOlderStatesAreUnchangedByWithMove() {
+		PersistentGameState initial = initialState();
+		String initialDescription = describe(initial);
+		PersistentGameState afterMrX = initial.withMove(new TicketMove(BLACK, Ticket.TAXI, 58));
+		String afterMrXDescription = describe(afterMrX);
+		PersistentGameState afterBlue = afterMrX.withMove(new TicketMove(BLUE, Ticket.BUS, 34));
+
+		assertThat(describe(afterBlue)).isNotEqualTo(afterMrXDescription);
+		assertThat(describe(afterMrX)).isEqualTo(afterMrXDescription);
+		assertThat(describe(initial)).isEqualTo(initialDescription);
+		assertThat(afterBlue.getGraph()).isSameAs(initial.getGraph());
+		assertThat(afterBlue.getRounds()).isSameAs(initial.getRounds());
+	}
+
+	@Test
+	public void testWithMoveSharesRecordsOfUnchangedPlayers() {
+		PersistentGameState initial = initialState();
+		PersistentGameState afterMrX = initial.withMove(new TicketMove(BLACK, Ticket.TAXI, 58));
+		assertThat(afterMrX.record(0)).isNotSameAs(initial.record(0));
+		assertThat(afterMrX.record(1)).isSameAs(initial.record(1));
+
+		// the detective's ticket goes to Mr.X, so both change
+		PersistentGameState afterBlue = afterMrX.withMove(new TicketMove(BLUE, Ticket.BUS, 34));
+		assertThat(afterBlue.record(0)).isNotSameAs(afterMrX.record(0));
+		assertThat(afterBlue.record(1)).isNotSameAs(afterMrX.record(1));
+	}
+
+	@Test
+	public void testMoveOfAnotherPlayerShouldThrow() {
+		PersistentGameState state = initialState();
+		assertThatThrownBy(() -> state.withMove(new TicketMove(BLUE, Ticket.TAXI, 47)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> state.withMove(new PassMove(BLACK)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	// the state the model hands Mr.X at 45 with Blue at 46
+	private static PersistentGameState initialState() {
+		PersistentGameState[] state = new PersistentGameState[1];
+		PlayerConfiguration mrX = new PlayerConfiguration.Builder(BLACK)
+				.using((view, location, moves, callback) -> state[0] = (PersistentGameState) view)
+				.with(StandardGame.generateMrXTickets()).at(45).build();
+		new ScotlandYardModel(StandardGame.ROUNDS, graph, mrX, doNothingPlayer(BLUE, 46))
+				.startRotate();
+		return state[0];
+	}
+
+	// derives every state handed to a player from the previous one, checks
+	// consecutive states share the records the move did not change and that
+	// the first state stays the same throughout
+	private static void playOut(int seed) {
+		PersistentGameState[] first = new PersistentGameState[1];
+		String[] firstDescription = new String[1];
+		PersistentGameState[] previous = new PersistentGameState[1];
+		Move[] previousMove = new Move[1];
+		PersistentGameState[] derived = new PersistentGameState[1];
+		boolean played = TestGames.randomPlayOut(graph, seed, new PlayOutObserver() {
+			@Override
+			public void onMoveChosen(ScotlandYardView view, int location, Set<Move> moves,
+					Move move) {
+				assertThat(view).isInstanceOf(PersistentGameState.class);
+				PersistentGameState state = (PersistentGameState) view;
+				if (first[0] == null) {
+					first[0] = state;
+					firstDescription[0] = describe(state);
+				} else {
+					assertThat(describe(derived[0])).isEqualTo(describe(state));
+					assertSharesUnchangedRecords(previous[0], previousMove[0], state);
+					assertSharesUnchangedRecords(previous[0], previousMove[0], derived[0]);
+				}
+				previous[0] = state;
+				previousMove[0] = move;
+				derived[0] = state.withMove(move);
+			}
+
+			@Override
+			public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+				assertThat(derived[0].isGameOver()).isTrue();
+				assertThat(describe(derived[0])).isEqualTo(describe(view));
+			}
+		});
+		if (played) assertThat(describe(first[0])).isEqualTo(firstDescription[0]);
+	}
+
+	private static void assertSharesUnchangedRecords(PersistentGameState before, Move move,
+			PersistentGameState after) {
+		int mover = before.getPlayers().indexOf(move.colour());
+		for (int i = 0; i < before.getPlayers().size(); i++) {
+			boolean changed = !(move instanceof PassMove)
+					&& (i == mover || (i == 0 && move instanceof TicketMove));
+			if (!changed) assertThat(after.record(i)).isSameAs(before.record(i));
+		}
+	}
+
+	private static String describe(ScotlandYardView view) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(view.getCurrentPlayer()).append(" round ").append(view.getCurrentRound())
+				.append(" over ").append(view.isGameOver())
+				.append(" winners ").append(new TreeSet<>(view.getWinningPlayers()));
+		for (Colour colour : view.getPlayers()) {
+			builder.append(' ').append(colour).append('@').append(view.getPlayerLocation(colour));
+			for (Ticket ticket : Ticket.values())
+				builder.append(',').append(view.getPlayerTickets(colour, ticket));
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,93 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link TicketReachability} on small hand-built maps
+ */
+public class TicketReachabilityTest {
+
+	// 1 -underground- 2, 1 -taxi- 3 -taxi- 2, 2 -ferry- 4, 4 -taxi- 5
+	private static final Graph<Integer, Transport> GRAPH = ScotlandYardGraphReader.fromLines(
+			asList("5 5", "1", "2", "3", "4", "5",
+					"1 2 Underground", "1 3 Taxi", "3 2 Taxi", "2 4 Ferry", "4 5 Taxi"));
+
+	@Test
+	public void testDetectiveWithoutUndergroundTicketsCannotUseTheTube() {
+		TicketReachability reachability = new TicketReachability(GRAPH);
+		assertThat(reachability.minimumMoves(1, 2, tickets(0, 0, 1, 0))).isEqualTo(1);
+		assertThat(reachability.minimumMoves(1, 2, tickets(5, 0, 0, 0))).isEqualTo(2);
+		assertThat(reachability.minimumMoves(1, 2, tickets(1, 0, 0, 0)))
+				.isEqualTo(TicketReachability.UNREACHABLE);
+	}
+
+	@Test
+	public void testFerryIsOnlyReachableWithSecretTickets() {
+		TicketReachability reachability = new TicketReachability(GRAPH);
+		assertThat(reachability.minimumMoves(2, 4, tickets(10, 10, 10, 0)))
+				.isEqualTo(TicketReachability.UNREACHABLE);
+		assertThat(reachability.minimumMoves(2, 4, tickets(0, 0, 0, 1))).isEqualTo(1);
+		assertThat(reachability.minimumMoves(2, 5, tickets(1, 0, 0, 1))).isEqualTo(2);
+		// the secret ticket is spent on the ferry, so the taxi is needed too
+		assertThat(reachability.minimumMoves(2, 5, tickets(0, 0, 0, 1)))
+				.isEqualTo(TicketReachability.UNREACHABLE);
+	}
+
+	@Test
+	public void testReachableWithinMoves() {
+		TicketReachability reachability = new TicketReachability(GRAPH);
+		Map<Ticket, Integer> tickets = tickets(10, 0, 10, 0);
+		assertThat(reachability.reachable(1, tickets, 0)).isEqualTo(new int[]{1});
+		assertThat(reachability.reachable(1, tickets, 1)).isEqualTo(new int[]{1, 2, 3});
+		assertThat(reachability.reachable(1, tickets, 5)).isEqualTo(new int[]{1, 2, 3});
+		assertThat(reachability.reachable(1, tickets(10, 0, 10, 1), 2))
+				.isEqualTo(new int[]{1, 2, 3, 4});
+		assertThat(reachability.reachable(1, tickets(10, 0, 10, 1), 3))
+				.isEqualTo(new int[]{1, 2, 3, 4, 5});
+	}
+
+	@Test
+	public void testCacheDoesNotChangeAnswers() throws Exception {
+		Graph<Integer, Transport> graph = StandardGame.standardGraph();
+		TicketReachability cached = new TicketReachability(graph, 4);
+		TicketReachability uncached = new TicketReachability(graph, 0);
+		for (int source : asList(1, 46, 108, 199))
+			for (int taxi = 0; taxi < 4; taxi++)
+				for (int secret = 0; secret < 2; secret++) {
+					Map<Ticket, Integer> tickets = tickets(taxi, 2, 1, secret);
+					for (int k = 0; k < 4; k++)
+						assertThat(Arrays.equals(cached.reachable(source, tickets, k),
+								uncached.reachable(source, tickets, k))).isTrue();
+				}
+	}
+
+	@Test
+	public void testUnknownLocationShouldThrow() {
+		TicketReachability reachability = new TicketReachability(GRAPH);
+		assertThatThrownBy(() -> reachability.minimumMoves(1, 6, tickets(1, 1, 1, 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> reachability.reachable(6, tickets(1, 1, 1, 1), 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static Map<Ticket, Integer> tickets(int taxi, int bus, int underground, int secret) {
+		Map<Ticket, Integer> tickets = new EnumMap<>(Ticket.class);
+		tickets.put(Ticket.TAXI, taxi);
+		tickets.put(Ticket.BUS, bus);
+		tickets.put(Ticket.UNDERGROUND, underground);
+		tickets.put(Ticket.SECRET, secret);
+		tickets.put(Ticket.DOUBLE, 0);
+		return tickets;
+	}
+
+}